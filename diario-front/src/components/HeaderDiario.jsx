@@ -7,6 +7,7 @@ import {
   HomeOutlined,
 } from "@ant-design/icons";
 import { useNavigate, useLocation } from "react-router-dom";
+import { logout as encerrarSessao } from "../services/authService";
 
 const { Header } = Layout;
 
@@ -14,9 +15,8 @@ const HeaderDiario = () => {
   const navigate = useNavigate();
   const location = useLocation();
 
-  const logout = () => {
-    localStorage.removeItem("token");
-    localStorage.removeItem("usuarioId");
+  const logout = async () => {
+    await encerrarSessao();
     navigate("/");
   };
 
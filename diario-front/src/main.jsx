@@ -3,6 +3,7 @@ import ReactDOM from "react-dom/client";
 import App from "./App";
 import "antd/dist/reset.css"; // estilização base do Ant
 import "./index.css";
+import "./services/authService"; // Renovação da sessão nas chamadas do axios
 
 ReactDOM.createRoot(document.getElementById("root")).render(
   <React.StrictMode>
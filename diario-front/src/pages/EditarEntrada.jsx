@@ -136,9 +136,7 @@ const EditarEntrada = () => {
         // Mapear mídias existentes pro formato do fileList do Ant pra exibir
         const loadedMedia = entrada.midias
           ? entrada.midias.map((media) => {
-              const mediaFileName = media.caminhoArquivo
-                ? media.caminhoArquivo.split(/[\\/]/).pop()
-                : media.nomeOriginalArquivo; // Fallback se caminhoArquivo for undefined/null
+              const mediaFileName = media.nomePublico; // Nome da URL do arquivo; o do disco não sai do servidor
 
               const mediaUrl = mediaFileName
                 ? `${API_BASE_URL}/api/entradas/arquivo/${mediaFileName}`
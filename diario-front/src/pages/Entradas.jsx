@@ -9,56 +9,62 @@ import {
 import { useNavigate } from "react-router-dom";
 import backgroundImage from "../assets/background.jpg";
 import HeaderDiario from "../components/HeaderDiario";
+import { fetchAutenticado } from "../services/authService";
 
 const { Content, Footer } = Layout;
 
 const Entradas = () => {
   const [entradas, setEntradas] = useState([]);
   const [loading, setLoading] = useState(true);
+  const [proximoCursor, setProximoCursor] = useState(null);
   const navigate = useNavigate();
 
-  useEffect(() => {
-    const fetchEntradas = async () => {
-      setLoading(true);
-      try {
-        const token = localStorage.getItem("token");
-        const usuarioId = localStorage.getItem("usuarioId");
-        if (!usuarioId || !token) {
-          throw new Error("Usuário ou token não encontrados no localStorage");
-        }
-
-        const url = `/api/entradas`;
+  // Busca uma página da API; sem cursor é a primeira, com cursor as seguintes vão pro fim da lista
+  const fetchEntradas = async (cursor) => {
+    setLoading(true);
+    try {
+      const token = localStorage.getItem("token");
+      const usuarioId = localStorage.getItem("usuarioId");
+      if (!usuarioId || !token) {
+        throw new Error("Usuário ou token não encontrados no localStorage");
+      }
 
-        const response = await fetch(url, {
-          headers: { Authorization: `Bearer ${token}` },
-        });
+      // A tabela só mostra data e título: pede a versão resumida, sem o conteúdo de cada entrada
+      const url = cursor
+        ? `/api/entradas?campos=resumo&cursor=${encodeURIComponent(cursor)}`
+        : `/api/entradas?campos=resumo`;
 
-        if (!response.ok) {
-          const text = await response.text();
-          console.error("Resposta não OK:", response.status, text);
-          throw new Error(`Erro ao buscar entradas: ${response.status}`);
-        }
+      const response = await fetchAutenticado(url);
 
+      if (!response.ok) {
         const text = await response.text();
+        console.error("Resposta não OK:", response.status, text);
+        throw new Error(`Erro ao buscar entradas: ${response.status}`);
+      }
 
-        let data;
-        try {
-          data = JSON.parse(text);
-        } catch (jsonError) {
-          console.error("Erro ao converter resposta para JSON:", text);
-          throw new Error("Resposta da API não é JSON válido");
-        }
-
-        setEntradas(Array.isArray(data) ? data : data.entradas || []);
-      } catch (error) {
-        console.error("Erro ao carregar as entradas:", error);
-        message.error("Erro ao carregar as entradas. Veja console.");
-      } finally {
-        setLoading(false);
+      const text = await response.text();
+
+      let data;
+      try {
+        data = JSON.parse(text);
+      } catch (jsonError) {
+        console.error("Erro ao converter resposta para JSON:", text);
+        throw new Error("Resposta da API não é JSON válido");
       }
-    };
 
-    fetchEntradas();
+      const pagina = Array.isArray(data) ? data : data.entradas || [];
+      setEntradas((prev) => (cursor ? [...prev, ...pagina] : pagina));
+      setProximoCursor(Array.isArray(data) ? null : data.proximoCursor || null);
+    } catch (error) {
+      console.error("Erro ao carregar as entradas:", error);
+      message.error("Erro ao carregar as entradas. Veja console.");
+    } finally {
+      setLoading(false);
+    }
+  };
+
+  useEffect(() => {
+    fetchEntradas(null);
   }, []);
 
   // Handlers pra ações da tabela
@@ -71,11 +77,9 @@ const Entradas = () => {
   };
 
   const handleExcluir = async (id) => {
-    const token = localStorage.getItem("token");
     try {
-      const response = await fetch(`http://localhost:8080/api/entradas/${id}`, {
+      const response = await fetchAutenticado(`http://localhost:8080/api/entradas/${id}`, {
         method: "DELETE",
-        headers: { Authorization: `Bearer ${token}` },
       });
       if (!response.ok) {
         throw new Error("Erro ao excluir");
@@ -213,6 +217,17 @@ const Entradas = () => {
             boxShadow: "0px 4px 15px rgba(0, 0, 0, 0.5)", // Sombra da tabela
           }}
         />
+
+        {/* A API manda as entradas em páginas; as mais antigas vêm sob demanda */}
+        {proximoCursor && (
+          <Button
+            style={{ marginTop: "20px" }}
+            loading={loading}
+            onClick={() => fetchEntradas(proximoCursor)}
+          >
+            Carregar mais
+          </Button>
+        )}
       </Content>
 
       <Footer
@@ -23,9 +23,7 @@ const Login = () => {
 
   const onFinishLogin = async (values) => {
     try {
-      const data = await login(values.username, values.senha);
-      localStorage.setItem("token", data.token);
-      localStorage.setItem("usuarioId", data.usuarioId);
+      await login(values.username, values.senha); // Guarda token, refresh token e usuário
       message.success("Login realizado com sucesso!");
       window.location.href = "/home";
     } catch (error) {
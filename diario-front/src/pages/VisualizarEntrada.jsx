@@ -269,9 +269,7 @@ const VisualizarEntrada = () => {
                 }}
               >
                 {entrada.midias.map((media) => {
-                  const mediaFileName = media.caminhoArquivo
-                    ? media.caminhoArquivo.split(/[\\/]/).pop()
-                    : "";
+                  const mediaFileName = media.nomePublico || "";
                   const mediaUrl = `${API_BASE_URL}/api/entradas/arquivo/${mediaFileName}`;
                   const isImage = media.tipoArquivo === "imagem";
                   const isVideo = media.tipoArquivo === "video";
@@ -293,7 +291,7 @@ const VisualizarEntrada = () => {
                         isImage ? (
                           <Image
                             alt={media.nomeOriginalArquivo}
-                            src={mediaUrl}
+                            src={`${mediaUrl}?variante=miniatura`} // Miniatura no card, original só no preview
                             style={{
                               height: 90,
                               objectFit: "contain",
@@ -1,7 +1,102 @@
+import axios from "axios";
 import api from "./api";
 
+// O token de acesso dura poucos minutos; o refresh token troca ele por um novo sem pedir a senha
+const salvarSessao = (data) => {
+  localStorage.setItem("token", data.token);
+  localStorage.setItem("refreshToken", data.refreshToken);
+  localStorage.setItem("usuarioId", data.usuarioId);
+};
+
+const limparSessao = () => {
+  localStorage.removeItem("token");
+  localStorage.removeItem("refreshToken");
+  localStorage.removeItem("usuarioId");
+};
+
 //função de login
 export const login = async (username, senha) => {
   const response = await api.post("/auth/login", { username, senha });
-  return response.data; // Esperado: { token: "..." }
+  salvarSessao(response.data);
+  return response.data; // Esperado: { token, refreshToken, usuarioId, expiraEmSegundos }
+};
+
+let renovacaoEmAndamento = null;
+
+// Troca o refresh token por um par novo. Várias requisições com 401 ao mesmo tempo esperam a mesma troca,
+// porque o servidor derruba a sessão se o mesmo refresh token for usado duas vezes
+export const renovarSessao = () => {
+  if (!renovacaoEmAndamento) {
+    const refreshToken = localStorage.getItem("refreshToken");
+    const troca = refreshToken
+      ? api.post("/auth/refresh", { refreshToken })
+      : Promise.reject(new Error("Sem refresh token"));
+    renovacaoEmAndamento = troca
+      .then((response) => {
+        salvarSessao(response.data);
+        return response.data.token;
+      })
+      .catch((error) => {
+        // Sessão vencida ou revogada: só com login de novo
+        limparSessao();
+        window.location.href = "/";
+        throw error;
+      })
+      .finally(() => {
+        renovacaoEmAndamento = null;
+      });
+  }
+  return renovacaoEmAndamento;
 };
+
+// Revoga a sessão no servidor (e os tokens de acesso dela); o local é limpo mesmo se a chamada falhar
+export const logout = async () => {
+  const refreshToken = localStorage.getItem("refreshToken");
+  limparSessao();
+  if (refreshToken) {
+    try {
+      await api.post("/auth/logout", { refreshToken });
+    } catch (error) {
+      console.error("Erro ao encerrar a sessão no servidor:", error);
+    }
+  }
+};
+
+// fetch com o token atual; num 401 renova a sessão e tenta mais uma vez
+export const fetchAutenticado = async (url, options = {}) => {
+  const enviar = () =>
+    fetch(url, {
+      ...options,
+      headers: {
+        ...options.headers,
+        Authorization: `Bearer ${localStorage.getItem("token")}`,
+      },
+    });
+  const response = await enviar();
+  if (response.status !== 401) {
+    return response;
+  }
+  await renovarSessao();
+  return enviar();
+};
+
+// Chamadas com o axios global (as páginas usam direto): sempre com o token atual, não o que a página
+// leu quando montou, e num 401 renova a sessão e repete uma vez
+axios.interceptors.request.use((config) => {
+  const token = localStorage.getItem("token");
+  if (token && config.headers && config.headers.Authorization) {
+    config.headers.Authorization = `Bearer ${token}`;
+  }
+  return config;
+});
+
+axios.interceptors.response.use(undefined, async (error) => {
+  const config = error.config;
+  if (error.response && error.response.status === 401 && config && !config._sessaoRenovada) {
+    config._sessaoRenovada = true;
+    const token = await renovarSessao();
+    config.headers.Authorization = `Bearer ${token}`;
+    return axios(config);
+  }
+  throw error;
+});
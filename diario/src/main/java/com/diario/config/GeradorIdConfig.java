@@ -0,0 +1,45 @@
+package com.diario.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Acerta a tabela gerador_id antes da primeira gravação.
+ * As entradas e mídias eram AUTO_INCREMENT; agora os IDs saem em blocos dessa tabela, e sem isso
+ * o primeiro bloco começaria no 1, em cima das linhas que já existem. Roda toda subida e só sobe o valor.
+ */
+@Configuration
+public class GeradorIdConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeradorIdConfig.class);
+
+    // Mesmo allocationSize dos @TableGenerator de EntradaDiario e MidiaEntrada
+    private static final int TAMANHO_BLOCO = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Só pra garantir que o Hibernate já criou as tabelas (ddl-auto) antes daqui
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void acertarGeradores() {
+        acertar("entrada_diario");
+        acertar("midia_entrada");
+    }
+
+    private void acertar(String tabela) {
+        // O bloco pooled vai de (proximo_id - 50 + 1) até proximo_id: fica todo acima do maior ID atual
+        jdbcTemplate.update("INSERT INTO gerador_id (tabela, proximo_id) " +
+                "SELECT ?, COALESCE(MAX(id), 0) + ? FROM " + tabela + " " +
+                "ON DUPLICATE KEY UPDATE proximo_id = GREATEST(proximo_id, VALUES(proximo_id))", tabela, TAMANHO_BLOCO + 1);
+        logger.debug("Gerador de IDs de {} acertado", tabela);
+    }
+}
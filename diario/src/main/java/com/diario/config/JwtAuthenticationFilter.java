@@ -1,12 +1,15 @@
 package com.diario.config;
 
-import com.diario.model.UsuarioDetails;
+import com.diario.model.UsuarioAutenticado;
 import com.diario.service.CustomUserDetailsService;
+import com.diario.service.RevogacaoSessaoService;
 import com.diario.util.JwtUtil;
+import com.diario.util.TokenVerificado;
 import io.jsonwebtoken.JwtException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -27,6 +30,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final RevogacaoSessaoService revogacaoSessaoService;
+
+    // Ligado, o usuário sai das claims assinadas do token e a requisição não vai no banco;
+    // desligado, todo token é conferido com o usuário do banco (pelo cache curto do CustomUserDetailsService)
+    @Value("${auth.jwt.confiar-nas-claims:true}")
+    private boolean confiarNasClaims;
 
     /**
      * Este método é sobrescrito para especificar quais requisições NÃO devem ser filtradas por este filtro JWT.
@@ -52,6 +61,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         String token = null;
+        TokenVerificado verificado = null;
         String username = null;
 
         try {
@@ -65,8 +75,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     return;
                 }
 
-                // Pega o nome de usuário do token
-                username = jwtUtil.extractUsername(token);
+                // Confere o token uma vez só (assinatura e expiração) e pega o nome de usuário dele
+                verificado = jwtUtil.verificar(token);
+                username = verificado.getUsername();
+
+                // Sessão revogada (logout, refresh token copiado): conferido em memória, sem banco
+                if (verificado.getSessaoId() != null && revogacaoSessaoService.revogada(verificado.getSessaoId())) {
+                    throw new JwtException("Sessão revogada");
+                }
             } else {
                 logger.warn("Token não encontrado ou inválido no header para a requisição: {}", request.getRequestURI());
                 filterChain.doFilter(request, response); // Passa pro próximo filtro
@@ -76,10 +92,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Se o nome de usuário foi extraído e não há autenticação existente no contexto de segurança:
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 logger.info("Autenticando usuário: " + username + " para requisição: " + request.getRequestURI());
-                UsuarioDetails userDetails = (UsuarioDetails) userDetailsService.loadUserByUsername(username);
+                UsuarioAutenticado userDetails = autenticar(verificado);
 
-                // Verifica se o token é válido pro usuário
-                if (jwtUtil.isTokenValid(token, userDetails)) {
+                // O token já foi conferido acima; aqui só falta o usuário bater
+                if (userDetails != null) {
                     logger.info("Token válido, autenticando o usuário no contexto para: " + username);
 
                     // Cria o token de autenticação
@@ -124,4 +140,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             }
         }
     }
+
+    /**
+     * Monta o usuário da requisição. Com o ID no token (e confiando nas claims), vem direto do token, que já teve
+     * a assinatura conferida; token antigo sem o ID, ou com as claims desligadas, é conferido com o banco.
+     *
+     * @return O usuário, ou nulo se o ID do token não bate com o do banco.
+     */
+    private UsuarioAutenticado autenticar(TokenVerificado verificado) {
+        Long usuarioId = verificado.getUsuarioId();
+        if (usuarioId != null && confiarNasClaims) {
+            return new UsuarioAutenticado(usuarioId, verificado.getUsername());
+        }
+        UsuarioAutenticado doBanco = userDetailsService.carregarAutenticado(verificado.getUsername());
+        return usuarioId == null || usuarioId.equals(doBanco.getId()) ? doBanco : null;
+    }
 }
@@ -2,6 +2,7 @@ package com.diario.config;
 
 import com.diario.service.CustomUserDetailsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -26,6 +27,10 @@ public class SecurityConfig {
     private final CustomUserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    // Custo do BCrypt (log2 das rodadas). Subir vale pros novos hashes, e os antigos são refeitos no próximo login
+    @Value("${auth.bcrypt.custo:10}")
+    private int custoBcrypt;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         return http
@@ -36,7 +41,7 @@ public class SecurityConfig {
                         .antMatchers("/auth/**").permitAll() // Permite acesso público a endpoints de autenticação
                         .antMatchers("/auth/test-email").permitAll() // Permite acesso público a endpoint de teste de email
                         .antMatchers("/redefinir-senha/**").permitAll() // Permite acesso público para redefinição de senha
-                        .antMatchers("/api/entradas/arquivo/**").permitAll() // Permite acesso público aos arquivos de mídia
+                        .antMatchers("/api/entradas/arquivo/**").permitAll() // Permite acesso público aos arquivos de mídia (pelo nome público aleatório de cada mídia, nunca pelo hash)
                         .anyRequest().authenticated() // Todas as outras requisições precisam de autenticação
                 ) // Fecha a configuração de autorização, retorna HttpSecurity
                 .sessionManagement(session -> session // Inicia a configuração de gerenciamento de sessão com lambda
@@ -68,6 +73,6 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(custoBcrypt);
     }
 }
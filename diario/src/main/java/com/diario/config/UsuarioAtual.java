@@ -0,0 +1,15 @@
+package com.diario.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca o parâmetro de um endpoint que recebe o usuário autenticado ({@link com.diario.model.UsuarioAutenticado}),
+ * já montado pelo filtro JWT: o controller tem o ID do usuário sem ir no banco.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface UsuarioAtual {
+}
@@ -0,0 +1,39 @@
+package com.diario.config;
+
+import com.diario.model.UsuarioAutenticado;
+import com.diario.model.UsuarioDetails;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Preenche os parâmetros {@link UsuarioAtual} com o usuário do contexto de segurança.
+ */
+public class UsuarioAtualArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(UsuarioAtual.class)
+                && UsuarioAutenticado.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public UsuarioAutenticado resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                              NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Authentication autenticacao = SecurityContextHolder.getContext().getAuthentication();
+        Object principal = autenticacao != null ? autenticacao.getPrincipal() : null;
+        if (principal instanceof UsuarioAutenticado usuario) {
+            return usuario;
+        }
+        if (principal instanceof UsuarioDetails detalhes) {
+            return new UsuarioAutenticado(detalhes.getId(), detalhes.getUsername());
+        }
+        // Vira 401 no ExceptionTranslationFilter
+        throw new AuthenticationCredentialsNotFoundException("Requisição sem usuário autenticado");
+    }
+}
@@ -1,9 +1,12 @@
 package com.diario.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -14,6 +17,13 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:5173")                    // URL do front
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")  // Métodos permitidos
                 .allowedHeaders("*")                                        // Permite todos os cabeçalhos
+                .exposedHeaders("Upload-Offset")                            // Offset do upload retomável, lido pelo front
                 .allowCredentials(true);                                    // Permite o envio de cookies, se necessário
     }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        // @UsuarioAtual nos controllers: o usuário autenticado sai do contexto de segurança, sem consulta
+        resolvers.add(new UsuarioAtualArgumentResolver());
+    }
 }
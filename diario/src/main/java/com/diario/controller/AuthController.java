@@ -1,11 +1,12 @@
 package com.diario.controller;
 
 import com.diario.model.Usuario;
-import com.diario.model.UsuarioDetails;
 import com.diario.service.UsuarioService;
 import com.diario.service.PasswordResetService;
-import com.diario.util.JwtUtil;
+import com.diario.service.SessaoLoginService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,8 +15,7 @@ import org.springframework.mail.javamail.JavaMailSender;
 
 import java.util.Optional;
 import java.util.Map;
-
-import org.springframework.security.crypto.password.PasswordEncoder;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/auth")
@@ -25,10 +25,7 @@ public class AuthController {
     private UsuarioService usuarioService;
 
     @Autowired
-    private JwtUtil jwtUtil;
-
-    @Autowired
-    private PasswordEncoder passwordEncoder;
+    private SessaoLoginService sessaoLoginService;
 
     @Autowired
     private JavaMailSender mailSender;
@@ -43,22 +40,61 @@ public class AuthController {
         if (usuarioExistente.isPresent()) {
             Usuario existente = usuarioExistente.get();
 
-            if (passwordEncoder.matches(usuario.getSenha(), existente.getSenha())) {
-                String token = jwtUtil.generateToken(new UsuarioDetails(existente));
-                return ResponseEntity.ok(Map.of(
-                        "token", token,
-                        "usuarioId", existente.getId()
-                ));
+            boolean senhaConfere;
+            try {
+                senhaConfere = usuarioService.conferirSenha(existente, usuario.getSenha());
+            } catch (RejectedExecutionException e) {
+                return sobrecarregado();
+            }
+
+            if (senhaConfere) {
+                return ResponseEntity.ok(sessaoLoginService.abrir(existente));
             }
         }
 
         return ResponseEntity.status(401).body("Usuário ou senha inválidos");
     }
 
+    /**
+     * Troca o refresh token por um token de acesso novo (e um refresh token novo), sem senha.
+     *
+     * @param body {"refreshToken": "..."}
+     * @return Os tokens novos, ou 401 se o refresh token não vale mais (aí só com login).
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody Map<String, String> body) {
+        String refreshToken = body.get("refreshToken");
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return ResponseEntity.badRequest().body("refreshToken é obrigatório");
+        }
+        return sessaoLoginService.renovar(refreshToken)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(401).body("Refresh token inválido ou expirado"));
+    }
+
+    /**
+     * Logout: revoga a sessão do refresh token, junto com os tokens de acesso dela.
+     *
+     * @param body {"refreshToken": "..."}
+     * @return 204 sempre (token desconhecido não dá erro).
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody Map<String, String> body) {
+        String refreshToken = body.get("refreshToken");
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            sessaoLoginService.encerrar(refreshToken);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/register")
-    public ResponseEntity<Usuario> register(@RequestBody Usuario usuario) {
-        Usuario novoUsuario = usuarioService.cadastrarUsuario(usuario);
-        return ResponseEntity.ok(novoUsuario);
+    public ResponseEntity<?> register(@RequestBody Usuario usuario) {
+        try {
+            Usuario novoUsuario = usuarioService.cadastrarUsuario(usuario);
+            return ResponseEntity.ok(novoUsuario);
+        } catch (RejectedExecutionException e) {
+            return sobrecarregado();
+        }
     }
 
     @PostMapping("/forgot-password")
@@ -78,6 +114,8 @@ public class AuthController {
             return ResponseEntity.ok("Senha redefinida com sucesso");
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return sobrecarregado();
         }
     }
 
@@ -89,4 +127,11 @@ public class AuthController {
         message.setText("Se tu tá vendo isso no Mailtrap, funcionou! 🚀");
         mailSender.send(message);
     }
+
+    // Os hashes de senha estão todos ocupados (rajada de logins): melhor recusar rápido do que enfileirar
+    private static <T> ResponseEntity<T> sobrecarregado() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "2")
+                .build();
+    }
 }
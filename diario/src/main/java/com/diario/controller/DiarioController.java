@@ -1,9 +1,12 @@
 package com.diario.controller;
 
+import com.diario.config.UsuarioAtual;
 import com.diario.model.EntradaDiario;
+import com.diario.model.UsuarioAutenticado;
 import com.diario.service.EntradaDiarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -20,16 +23,31 @@ public class DiarioController {
     private EntradaDiarioService entradaDiarioService;
 
     /**
-     * Endpoint GET para listar todas as entradas de diário de um usuário específico.
+     * Endpoint GET para listar as entradas de diário de um usuário específico, uma página por vez.
+     * O corpo continua sendo a lista de entradas; o cursor da próxima página vai no cabeçalho
+     * X-Proximo-Cursor (ausente na última página).
      *
      * @param usuarioId O ID do usuário cujas entradas serão listadas.
+     * @param cursor    Opcional: o X-Proximo-Cursor da resposta anterior.
+     * @param limite    Opcional: quantas entradas por página (tem um máximo no servidor).
      * @return ResponseEntity contendo uma lista de EntradaDiario se encontradas,
-     * ou uma resposta HTTP apropriada caso contrário.
+     * ou 400 se o cursor for inválido.
      */
     @GetMapping("/{usuarioId}")
-    public ResponseEntity<List<EntradaDiario>> getEntradas(@PathVariable Long usuarioId) {
-        List<EntradaDiario> entradas = entradaDiarioService.listarEntradasPorUsuario(usuarioId);
-        return ResponseEntity.ok(entradas);
+    public ResponseEntity<List<EntradaDiario>> getEntradas(@PathVariable Long usuarioId,
+                                                           @RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "limite", required = false) Integer limite) {
+        EntradaDiarioService.PaginaEntradas pagina;
+        try {
+            pagina = entradaDiarioService.listarEntradasPorUsuario(usuarioId, cursor, limite);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok();
+        if (pagina.getProximoCursor() != null) {
+            resposta.header("X-Proximo-Cursor", pagina.getProximoCursor());
+        }
+        return resposta.body(pagina.getEntradas());
     }
 
     /**
@@ -50,11 +68,19 @@ public class DiarioController {
      * Endpoint DELETE para remover uma entrada de diário pelo seu ID.
      *
      * @param id O ID da entrada de diário a ser deletada.
-     * @return ResponseEntity com status 204 No Content se a deleção for bem-sucedida.
+     * @param usuario O usuário autenticado (tem que ser o dono da entrada).
+     * @return ResponseEntity com status 204 No Content se a deleção for bem-sucedida,
+     * 404 se a entrada não existir ou 403 se for de outro usuário.
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteEntrada(@PathVariable Long id) {
-        entradaDiarioService.deletarEntrada(id);
+    public ResponseEntity<Void> deleteEntrada(@PathVariable Long id, @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            if (!entradaDiarioService.deletarEntrada(id, usuario.getId())) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(403).build();
+        }
         return ResponseEntity.noContent().build();
     }
 }
@@ -1,24 +1,43 @@
 package com.diario.controller;
 
+import com.diario.config.UsuarioAtual;
 import com.diario.dto.EntradaDiarioResponseDTO;
+import com.diario.dto.PaginaEntradasDTO;
+import com.diario.dto.PaginaResumosDTO;
 import com.diario.model.EntradaDiario;
-import com.diario.model.Usuario;
+import com.diario.model.UsuarioAutenticado;
+import com.diario.service.ArmazenamentoMidiaService;
+import com.diario.service.BuscaEntradasService;
+import com.diario.service.CacheEntradasService;
+import com.diario.service.CacheMidiaService;
+import com.diario.service.CalendarioService;
+import com.diario.service.DerivadosMidiaService;
 import com.diario.service.EntradaDiarioService;
-import com.diario.service.UsuarioService;
+import com.diario.service.ExportacaoService;
+import com.diario.service.ImportacaoService;
+import com.diario.service.MetadadosMidiaService;
+import com.diario.service.NomePublicoMidiaService;
+import com.diario.service.SincronizacaoService;
+import com.diario.service.VersaoDiarioService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.security.Principal;
+import java.io.InputStream;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -33,122 +52,354 @@ public class EntradaDiarioController {
     private EntradaDiarioService entradaDiarioService;
 
     @Autowired
-    private UsuarioService usuarioService;
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
 
-    // Injeta o diretório de upload do application.properties:
-    @Value("${file.upload-dir}")
-    private String uploadDir;
+    @Autowired
+    private DerivadosMidiaService derivadosMidiaService;
+
+    @Autowired
+    private CacheMidiaService cacheMidiaService;
+
+    @Autowired
+    private NomePublicoMidiaService nomePublicoMidiaService;
+
+    @Autowired
+    private CacheEntradasService cacheEntradasService;
+
+    @Autowired
+    private VersaoDiarioService versaoDiarioService;
+
+    @Autowired
+    private SincronizacaoService sincronizacaoService;
+
+    @Autowired
+    private BuscaEntradasService buscaEntradasService;
+
+    @Autowired
+    private CalendarioService calendarioService;
+
+    @Autowired
+    private ExportacaoService exportacaoService;
+
+    @Autowired
+    private ImportacaoService importacaoService;
+
+    // O nome público de uma mídia sempre aponta pro mesmo conteúdo, então o navegador pode guardar por um ano
+    private static final String CACHE_CONTROL_IMUTAVEL = "public, max-age=31536000, immutable";
+
+    // Original servido no lugar de uma variante que ainda não existe: o navegador tem que perguntar de novo
+    private static final String CACHE_CONTROL_REVALIDAR = "no-cache";
 
     /**
      * Endpoint para servir arquivos estáticos (imagens, vídeos, áudios, documentos).
+     * O arquivo é pedido pelo nome público da mídia (nomePublico no DTO), que não tem relação com o
+     * conteúdo; o nome do arquivo no disco (o hash) fica só no servidor.
+     * O arquivo é enviado direto do disco como Resource, sem carregar tudo na memória,
+     * e requisições com cabeçalho Range recebem 206 Partial Content (seek em vídeo/áudio).
+     * Envia ETag e Last-Modified tirados dos metadados do arquivo, então If-None-Match/If-Modified-Since
+     * respondem 304 Not Modified sem ler nada do disco.
+     * Com o parâmetro variante (ex: ?variante=miniatura) entrega a versão reduzida, ou o original
+     * enquanto ela ainda não foi gerada.
+     * O Content-Type vem do que foi gravado no upload, sem sondar o arquivo.
      *
-     * @param nomeArquivo O nome do arquivo a ser recuperado.
-     * @return ResponseEntity contendo os bytes do arquivo e o tipo de mídia.
-     * @throws IOException Se houver um erro ao ler o arquivo.
+     * @param nomeArquivo O nome público da mídia.
+     * @param variante    Opcional: "miniatura" ou "media".
+     * @return ResponseEntity contendo o arquivo (ou a faixa pedida) e o tipo de mídia.
      */
     @GetMapping("/arquivo/{nomeArquivo}")
-    public ResponseEntity<byte[]> getArquivo(@PathVariable String nomeArquivo) throws IOException {
-        Path filePath = Paths.get(uploadDir, nomeArquivo);
-        logger.info("Tentando servir arquivo: {}", filePath);
-
-        if (!Files.exists(filePath)) {
-            logger.warn("Arquivo não encontrado: {}", filePath);
+    public ResponseEntity<Resource> getArquivo(@PathVariable String nomeArquivo,
+                                               @RequestParam(value = "variante", required = false) String variante) {
+        Optional<NomePublicoMidiaService.MidiaPublica> midia = nomePublicoMidiaService.buscar(nomeArquivo);
+        if (midia.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        String nomeArmazenado = midia.get().getNomeArquivo();
+        if (variante != null) {
+            Optional<String> nomeVariante = derivadosMidiaService.buscarVariante(nomeArmazenado, variante);
+            if (nomeVariante.isPresent()) {
+                return servirArquivo(nomeVariante.get(), nomeArquivo, DerivadosMidiaService.CONTENT_TYPE_VARIANTE, CACHE_CONTROL_IMUTAVEL);
+            }
+            // Variante ainda não pronta (ou não existe pra esse tipo): vai o original, sem cache longo nessa URL
+            return servirArquivo(nomeArmazenado, nomeArquivo, contentTypeDa(midia.get()), CACHE_CONTROL_REVALIDAR);
+        }
+        return servirArquivo(nomeArmazenado, nomeArquivo, contentTypeDa(midia.get()), CACHE_CONTROL_IMUTAVEL);
+    }
 
-        byte[] fileBytes = Files.readAllBytes(filePath);
+    // O gravado na mídia; mídia antiga ainda sem metadados cai na tabela de extensões
+    private static String contentTypeDa(NomePublicoMidiaService.MidiaPublica midia) {
+        return midia.getContentType() != null ? midia.getContentType()
+                : MetadadosMidiaService.contentTypePorExtensao(midia.getNomeArquivo());
+    }
 
-        String mimeType = Files.probeContentType(filePath);
-        logger.info("MIME Type detectado por Files.probeContentType: {}", mimeType);
+    /**
+     * Monta a resposta com o arquivo da pasta de upload, com Range, ETag e Last-Modified.
+     * Arquivos pequenos saem do cache em memória, sem ir ao disco; o Content-Type já vem resolvido
+     * junto com o nome público, então nenhuma requisição vai ao banco aqui.
+     * O nome que vai no Content-Disposition é o público, nunca o do armazenamento.
+     */
+    private ResponseEntity<Resource> servirArquivo(String nomeArquivo, String nomePublico, String mimeType, String cacheControl) {
+        Optional<CacheMidiaService.ArquivoEmCache> emCache = cacheMidiaService.buscar(nomeArquivo);
+        if (emCache.isPresent()) {
+            return respostaArquivo(emCache.get(), nomePublico, mimeType, cacheControl);
+        }
 
-        if (mimeType == null) {
-            String fileExtension = "";
-            int dotIndex = nomeArquivo.lastIndexOf('.');
-            if (dotIndex > 0 && dotIndex < nomeArquivo.length() - 1) {
-                fileExtension = nomeArquivo.substring(dotIndex + 1).toLowerCase();
-            }
+        // Procura nas subpastas e, se ainda não migrou, na raiz; nomes com ".." ou pastas nem são procurados
+        Optional<ArmazenamentoMidiaService.ArquivoLocalizado> localizado = armazenamentoMidiaService.localizar(nomeArquivo);
+        if (localizado.isEmpty()) {
+            logger.warn("Arquivo não encontrado: {} (mídia {})", nomeArquivo, nomePublico);
+            return ResponseEntity.notFound().build();
+        }
 
-            switch (fileExtension) {
-                case "pdf":
-                    mimeType = "application/pdf";
-                    break;
-                case "jpg":
-                case "jpeg":
-                    mimeType = "image/jpeg";
-                    break;
-                case "png":
-                    mimeType = "image/png";
-                    break;
-                case "gif":
-                    mimeType = "image/gif";
-                    break;
-                case "mp4":
-                    mimeType = "video/mp4";
-                    break;
-                case "webm":
-                    mimeType = "video/webm";
-                    break;
-                case "mp3":
-                    mimeType = "audio/mpeg";
-                    break;
-                case "wav":
-                    mimeType = "audio/wav";
-                    break;
-                case "doc":
-                    mimeType = "application/msword";
-                    break;
-                case "docx":
-                    mimeType = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
-                    break;
-                case "xls":
-                    mimeType = "application/vnd.ms-excel";
-                    break;
-                case "xlsx":
-                    mimeType = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
-                    break;
-                default:
-                    mimeType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-                    break;
+        BasicFileAttributes atributos = localizado.get().getAtributos();
+        if (cacheMidiaService.aceita(atributos.size())) {
+            Optional<CacheMidiaService.ArquivoEmCache> carregado = cacheMidiaService.carregar(nomeArquivo, mimeType);
+            if (carregado.isPresent()) {
+                return respostaArquivo(carregado.get(), nomePublico, mimeType, cacheControl);
             }
-
-            logger.info("MIME Type inferido pela extensão (fallback): {}", mimeType);
         }
 
-        logger.info("MIME Type FINAL enviado na resposta: {}", mimeType);
+        return respostaArquivo(nomePublico, mimeType, atributos.size(), atributos.lastModifiedTime().toMillis(),
+                cacheControl, new FileSystemResource(localizado.get().getCaminho()));
+    }
+
+    // O Content-Type é o da mídia pedida: outra mídia com o mesmo arquivo pode ter carregado o cache
+    private ResponseEntity<Resource> respostaArquivo(CacheMidiaService.ArquivoEmCache arquivo, String nomePublico, String mimeType,
+                                                     String cacheControl) {
+        return respostaArquivo(nomePublico, mimeType, arquivo.getTamanho(),
+                arquivo.getUltimaModificacao(), cacheControl, arquivo.comoResource());
+    }
+
+    private ResponseEntity<Resource> respostaArquivo(String nomeArquivo, String mimeType, long tamanho, long ultimaModificacao,
+                                                     String cacheControl, Resource corpo) {
+        String eTag = "\"" + Long.toHexString(tamanho) + "-" + Long.toHexString(ultimaModificacao) + "\"";
 
+        // O Spring trata o Range sozinho quando o corpo é um Resource: responde 206 com ResourceRegion
+        // e copia só a faixa pedida em blocos, então o heap não cresce com o tamanho do arquivo.
+        // Com ETag/Last-Modified no ResponseEntity, o Spring também já responde 304 pra If-None-Match/If-Modified-Since
         return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(ultimaModificacao)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
                 .contentType(MediaType.parseMediaType(mimeType))
-                .header("Content-Disposition", "inline; filename=\"" + nomeArquivo + "\"")
-                .body(fileBytes);
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + nomeArquivo + "\"")
+                .body(corpo);
     }
 
     /**
-     * Endpoint para listar todas as entradas do diário de um usuário.
-     * Requer autenticação (Principal).
+     * Endpoint para listar as entradas do diário de um usuário, uma página por vez.
+     * Requer autenticação (@UsuarioAtual).
+     * A ordem é da mais nova pra mais antiga; pra próxima página o cliente manda o proximoCursor
+     * da resposta anterior, até ele vir nulo.
+     *
+     * Com campos=resumo vem a versão enxuta pra linha do tempo (título, resumo e quantidade de mídias,
+     * sem o conteúdo inteiro); sem o parâmetro, ou com campos=completo, vem cada entrada completa.
      *
-     * @param principal Objeto Principal que representa o usuário autenticado.
-     * @return Lista de DTOs das entradas do diário do usuário.
+     * A resposta leva um ETag com a versão do diário do usuário, que muda a cada gravação. Com If-None-Match
+     * igual, volta 304 sem carregar nem serializar nada; senão a página sai do cache, se já foi montada nessa versão.
+     *
+     * @param cursor     Opcional: o proximoCursor da página anterior.
+     * @param limite     Opcional: quantas entradas por página (tem um máximo no servidor).
+     * @param campos     Opcional: "resumo" ou "completo" (padrão).
+     * @param usuario    O usuário autenticado.
+     * @param webRequest A requisição, pra conferir o If-None-Match.
+     * @return A página com os DTOs das entradas e o cursor da próxima, 304 se o cliente já tem essa versão,
+     * ou 400 se o cursor ou campos forem inválidos.
      */
     @GetMapping
-    public ResponseEntity<List<EntradaDiarioResponseDTO>> listarEntradas(Principal principal) {
-        String username = principal.getName();
+    public ResponseEntity<?> listarEntradas(@RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "limite", required = false) Integer limite,
+                                            @RequestParam(value = "campos", required = false) String campos,
+                                            @UsuarioAtual UsuarioAutenticado usuario, WebRequest webRequest) {
+        Long usuarioId = usuario.getId();
+        boolean resumo = "resumo".equals(campos);
+        if (!resumo && campos != null && !"completo".equals(campos)) {
+            return ResponseEntity.badRequest().body("Valor inválido pra campos: " + campos + " (use resumo ou completo)");
+        }
+
+        // A versão vem antes de tudo: se o cliente já tem, nem as entradas nem o JSON são montados
+        long versao = versaoDiarioService.versao(usuarioId);
+        String eTag = eTagVersao("u" + usuarioId, versao);
+        if (webRequest.checkNotModified(eTag)) {
+            return null; // 304 Not Modified, já com o ETag
+        }
+
+        String chavePagina = (resumo ? "resumo:" : "completo:") + (cursor != null ? cursor : "") + ":" + (limite != null ? limite : "");
+        Object pagina;
+        try {
+            pagina = resumo
+                    ? cacheEntradasService.listagem(usuarioId, versao, chavePagina, PaginaResumosDTO.class,
+                            () -> entradaDiarioService.listarResumosPorUsuario(usuarioId, cursor, limite))
+                    : cacheEntradasService.listagem(usuarioId, versao, chavePagina, PaginaEntradasDTO.class,
+                            () -> paginaCompleta(usuarioId, cursor, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        // O navegador pode guardar, mas tem que perguntar (com If-None-Match) toda vez antes de usar
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(eTag)
+                .body(pagina);
+    }
 
-        Usuario usuario = usuarioService.buscarPorUsername(username)
-                .orElseThrow(() -> new RuntimeException("Usuário não encontrado"));
+    // ETag fraco: a versão diz que o conteúdo é o mesmo, não que os bytes do JSON são idênticos
+    private static String eTagVersao(String prefixo, long versao) {
+        return "W/\"" + prefixo + "-" + versao + "\"";
+    }
 
-        List<EntradaDiario> entradas = entradaDiarioService.listarEntradasPorUsuario(usuario.getId());
+    private PaginaEntradasDTO paginaCompleta(Long usuarioId, String cursor, Integer limite) {
+        EntradaDiarioService.PaginaEntradas pagina = entradaDiarioService.listarEntradasPorUsuario(usuarioId, cursor, limite);
 
-        // Converte as entidades para DTOs pra não mostrar detalhes internos do modelo
-        List<EntradaDiarioResponseDTO> dtos = entradas.stream()
-                .map(EntradaDiarioResponseDTO::new)
+        // Converte as entidades para DTOs pra não mostrar detalhes internos do modelo;
+        // as mídias já vieram agrupadas, então montar os DTOs não dispara consulta nenhuma
+        List<EntradaDiarioResponseDTO> dtos = pagina.getEntradas().stream()
+                .map(entrada -> new EntradaDiarioResponseDTO(entrada, pagina.midiasDe(entrada.getId())))
                 .toList();
+        return new PaginaEntradasDTO(dtos, pagina.getProximoCursor());
+    }
+
+    /**
+     * Endpoint para os clientes offline buscarem só o que mudou desde a última sincronização:
+     * as entradas criadas ou alteradas (completas, com as mídias) e as entradas e mídias apagadas.
+     * Sem cursor vem o diário inteiro; enquanto temMais vier verdadeiro, é só chamar de novo com o proximoCursor.
+     *
+     * @param cursor    Opcional: o proximoCursor da última resposta.
+     * @param limite    Opcional: quantas entradas no máximo por resposta (tem um máximo no servidor).
+     * @param usuario   O usuário autenticado.
+     * @return As alterações e o próximo cursor; 400 se o cursor for inválido, ou 410 se ele for velho demais
+     * (as exclusões daquela época já foram descartadas) e o cliente tiver que sincronizar tudo de novo.
+     */
+    @GetMapping("/sincronizar")
+    public ResponseEntity<?> sincronizar(@RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "limite", required = false) Integer limite,
+                                         @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "no-store")
+                    .body(sincronizacaoService.alteracoesDesde(usuario.getId(), cursor, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.GONE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint para buscar texto nas entradas do usuário autenticado (título e conteúdo).
+     * Acentos e maiúsculas não importam, e cada palavra também acha as que começam com ela.
+     *
+     * @param q         O texto a buscar.
+     * @param limite    Opcional: quantos resultados no máximo (tem um máximo no servidor).
+     * @param usuario   O usuário autenticado.
+     * @return Os resultados do mais relevante pro menos, com trechos destacados; 400 se o texto não tiver
+     * nenhuma palavra, ou 503 enquanto o índice ainda está sendo montado no start.
+     */
+    @GetMapping("/busca")
+    public ResponseEntity<?> buscarEntradas(@RequestParam("q") String q,
+                                            @RequestParam(value = "limite", required = false) Integer limite,
+                                            @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "no-cache, no-store, must-revalidate")
+                    .body(buscaEntradasService.buscar(usuario.getId(), q, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint para o calendário/mapa de calor: quantas entradas e mídias o usuário autenticado
+     * tem em cada dia, semana ou mês de um intervalo. Períodos sem nada não vêm na lista.
+     *
+     * @param de          Primeiro dia do intervalo (aaaa-mm-dd).
+     * @param ate         Último dia do intervalo, inclusive (aaaa-mm-dd).
+     * @param agrupamento Opcional: "dia" (padrão), "semana" ou "mes".
+     * @param usuario     O usuário autenticado.
+     * @return As contagens por período, ou 400 se o intervalo ou o agrupamento forem inválidos.
+     */
+    @GetMapping("/calendario")
+    public ResponseEntity<?> calendario(@RequestParam("de") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate de,
+                                        @RequestParam("ate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate ate,
+                                        @RequestParam(value = "agrupamento", required = false) String agrupamento,
+                                        @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "no-cache, no-store, must-revalidate")
+                    .body(calendarioService.agregar(usuario.getId(), de, ate, agrupamento));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint para baixar o diário inteiro do usuário autenticado (backup).
+     * Em NDJSON vem uma entrada por linha, com os dados das mídias; em ZIP vem o mesmo NDJSON
+     * (entradas.ndjson) e os arquivos das mídias em midias/. A resposta sai aos poucos, enquanto é lida.
+     *
+     * @param formato   Opcional: "ndjson" (padrão) ou "zip".
+     * @param usuario   O usuário autenticado.
+     * @return O arquivo pra download, ou 400 se o formato for inválido.
+     */
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportar(@RequestParam(value = "formato", defaultValue = "ndjson") String formato,
+                                                          @UsuarioAtual UsuarioAutenticado usuario) {
+        Long usuarioId = usuario.getId();
+
+        StreamingResponseBody corpo;
+        String contentType;
+        if ("zip".equals(formato)) {
+            corpo = saida -> exportacaoService.exportarZip(usuarioId, saida);
+            contentType = "application/zip";
+        } else if ("ndjson".equals(formato)) {
+            corpo = saida -> exportacaoService.exportarNdjson(usuarioId, saida);
+            contentType = "application/x-ndjson";
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
 
-        // Retorna a lista de DTOs com cabeçalhos para controle de cache
         return ResponseEntity.ok()
-                .header("Cache-Control", "no-cache, no-store, must-revalidate")
-                .header("Pragma", "no-cache")
-                .header("Expires", "0")
-                .body(dtos);
+                .contentType(MediaType.parseMediaType(contentType))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + exportacaoService.nomeArquivo(formato) + "\"")
+                .header("Cache-Control", "no-store")
+                .body(corpo);
+    }
+
+    /**
+     * Endpoint para importar muitas entradas de uma vez (migração de outro app ou backup), em NDJSON
+     * no formato da exportação. O corpo é lido aos poucos e gravado em lotes, cada um com seu commit.
+     *
+     * @param corpo     O NDJSON, uma entrada por linha.
+     * @param usuario   O usuário autenticado.
+     * @return O resumo da importação; 400 (com o que já foi gravado) se uma linha estiver quebrada,
+     * ou 409 se já tem uma importação desse usuário rodando.
+     */
+    @PostMapping(value = "/importar", consumes = "application/x-ndjson")
+    public ResponseEntity<?> importar(InputStream corpo, @UsuarioAtual UsuarioAutenticado usuario) {
+        ImportacaoService.ProgressoImportacao resultado;
+        try {
+            resultado = importacaoService.importar(usuario.getId(), corpo);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+        return resultado.getErro() == null ? ResponseEntity.ok(resultado) : ResponseEntity.badRequest().body(resultado);
+    }
+
+    /**
+     * Endpoint para acompanhar a importação em andamento (ou a última) do usuário autenticado.
+     *
+     * @param usuario   O usuário autenticado.
+     * @return Linhas lidas, entradas e mídias gravadas até agora; 404 se não houve importação.
+     */
+    @GetMapping("/importar/progresso")
+    public ResponseEntity<ImportacaoService.ProgressoImportacao> progressoImportacao(@UsuarioAtual UsuarioAutenticado usuario) {
+        return importacaoService.progresso(usuario.getId())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     /**
@@ -157,7 +408,7 @@ public class EntradaDiarioController {
      * @param titulo    O título  da entrada.
      * @param conteudo  O conteúdo textual da entrada.
      * @param arquivos  Lista de arquivos de mídia (imagem, vídeo, áudio, documento) a serem anexados.
-     * @param principal Objeto Principal que representa o usuário autenticado.
+     * @param usuario   O usuário autenticado.
      * @return A entrada do diário salva, incluindo as mídias anexadas, como DTO.
      */
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -165,53 +416,57 @@ public class EntradaDiarioController {
             @RequestPart("titulo") String titulo,
             @RequestPart("conteudo") String conteudo,
             @RequestPart(value = "arquivos", required = false) List<MultipartFile> arquivos,
-            Principal principal) {
-
-        String username = principal.getName();
-        Usuario usuario = usuarioService.buscarPorUsername(username)
-                .orElseThrow(() -> new RuntimeException("Usuário não encontrado"));
+            @UsuarioAtual UsuarioAutenticado usuario) {
 
         EntradaDiario entrada = new EntradaDiario();
         entrada.setTitulo(titulo);
         entrada.setConteudo(conteudo);
         entrada.setData(LocalDate.now());
-        entrada.setUsuario(usuario);
-
-        // Salva a entrada principal primeiro para ganhar um ID
-        EntradaDiario entradaSalva = entradaDiarioService.criarEntrada(entrada, usuario.getId());
-
-        // Se tiver arquivos, processa e anexa
-        if (arquivos != null && !arquivos.isEmpty()) {
-            for (MultipartFile file : arquivos) {
-                if (!file.isEmpty()) {
-                    try {
-                        String tipoArquivo = inferirTipoArquivo(file); // Método auxiliar
-                        entradaDiarioService.anexarMidiaAEntrada(entradaSalva.getId(), file, tipoArquivo);
-                    } catch (RuntimeException e) {
-                        System.err.println("Erro ao anexar arquivo " + file.getOriginalFilename() + " para a entrada " + entradaSalva.getId() + ": " + e.getMessage());
-                    }
-                }
-            }
+
+        // Grava os arquivos em paralelo antes de abrir a transação, pra não segurar conexão do banco durante o I/O
+        List<ArmazenamentoMidiaService.ArquivoTemporario> temporarios = armazenamentoMidiaService.gravarTemporarios(arquivos);
+        try {
+            // Entrada e mídias saem numa transação só, e o DTO é montado da própria entidade salva
+            EntradaDiario entradaSalva = entradaDiarioService.criarEntradaComMidias(entrada, usuario.getId(), temporarios);
+            return ResponseEntity.ok(new EntradaDiarioResponseDTO(entradaSalva));
+        } finally {
+            // Os que foram confirmados já saíram da pasta temporária; isso só limpa sobras de erro
+            temporarios.forEach(armazenamentoMidiaService::descartar);
         }
-        // Tem que buscar a entrada novamente pra garantir que a lista 'midias' esteja populada
-        // E converter para DTO antes de retornar
-        return ResponseEntity.ok(entradaDiarioService.buscarPorId(entradaSalva.getId())
-                .map(EntradaDiarioResponseDTO::new) // Converte para DTO
-                .orElseThrow(() -> new RuntimeException("Erro ao buscar entrada recém-criada para serialização.")));
     }
 
     /**
-     * Endpoint para buscar uma entrada específica por ID.
+     * Endpoint para buscar uma entrada específica por ID, do usuário autenticado.
+     * Como na listagem, o ETag é a versão do diário do dono: com If-None-Match igual volta 304
+     * depois de uma leitura só; senão a entrada sai do cache, se já foi montada nessa versão.
+     * A leitura da versão já confere o dono, então entrada de outro usuário nem chega no cache.
      *
-     * @param id O ID da entrada a ser buscada.
-     * @return A entrada do diário se encontrada, ou 404 Not Found, como DTO.
+     * @param id         O ID da entrada a ser buscada.
+     * @param usuario    O usuário autenticado.
+     * @param webRequest A requisição, pra conferir o If-None-Match.
+     * @return A entrada do diário se encontrada, 304 se o cliente já tem essa versão, ou 404 Not Found
+     * (também pra entrada de outro usuário), como DTO.
      */
     @GetMapping("/{id}")
-    public ResponseEntity<EntradaDiarioResponseDTO> buscarPorId(@PathVariable Long id) { // Alterado para retornar DTO
-        Optional<EntradaDiario> entrada = entradaDiarioService.buscarPorId(id);
-        // Mapeia a entidade pra DTO antes de retornar
-        return entrada.map(EntradaDiarioResponseDTO::new) // Converte para DTO
-                .map(ResponseEntity::ok)
+    public ResponseEntity<EntradaDiarioResponseDTO> buscarPorId(@PathVariable Long id, @UsuarioAtual UsuarioAutenticado usuario,
+                                                                WebRequest webRequest) { // Alterado para retornar DTO
+        Long usuarioId = usuario.getId();
+        Optional<Long> versao = versaoDiarioService.versaoDaEntrada(id, usuarioId);
+        if (versao.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = eTagVersao("e" + id, versao.get());
+        if (webRequest.checkNotModified(eTag)) {
+            return null; // 304 Not Modified, já com o ETag
+        }
+
+        // Mapeia a entidade pra DTO antes de guardar e retornar
+        Optional<EntradaDiarioResponseDTO> entrada = cacheEntradasService.entrada(id, versao.get(),
+                () -> entradaDiarioService.buscarPorId(id, usuarioId).map(EntradaDiarioResponseDTO::new));
+        return entrada.map(dto -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noCache().cachePrivate())
+                        .eTag(eTag)
+                        .body(dto))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -223,66 +478,33 @@ public class EntradaDiarioController {
      * @param conteudo         O novo conteúdo da entrada.
      * @param novosArquivos    Opcional: lista de novos arquivos de mídia a serem adicionados.
      * @param idsMidiasRemover Opcional: lista de IDs de mídias existentes a serem removidas.
-     * @param principal        Objeto Principal que representa o usuário autenticado.
-     * @return A entrada do diário atualizada, incluindo as mídias, como DTO.
+     * @param usuario          O usuário autenticado.
+     * @return A entrada do diário atualizada, incluindo as mídias, como DTO, ou 400 se algum ID a remover
+     * não for de uma mídia da entrada (nada é alterado).
      */
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<EntradaDiarioResponseDTO> atualizarEntradaComMidias(
+    public ResponseEntity<?> atualizarEntradaComMidias(
             @PathVariable Long id,
             @RequestPart("titulo") String titulo,
             @RequestPart("conteudo") String conteudo,
             @RequestPart(value = "novosArquivos", required = false) List<MultipartFile> novosArquivos,
             @RequestPart(value = "idsMidiasRemover", required = false) List<Long> idsMidiasRemover,
-            Principal principal) {
-
-        String username = principal.getName();
-        Usuario usuario = usuarioService.buscarPorUsername(username)
-                .orElseThrow(() -> new RuntimeException("Usuário não encontrado"));
-
-        EntradaDiario entradaExistente = entradaDiarioService.buscarPorId(id)
-                .orElseThrow(() -> new RuntimeException("Entrada não encontrada com o ID: " + id));
-
-        // Verifica se o usuário autenticado é o dono da entrada
-        if (!entradaExistente.getUsuario().getId().equals(usuario.getId())) {
+            @UsuarioAtual UsuarioAutenticado usuario) {
+
+        List<ArmazenamentoMidiaService.ArquivoTemporario> temporarios = armazenamentoMidiaService.gravarTemporarios(novosArquivos);
+        try {
+            // Carrega a entrada uma vez, remove/adiciona mídias e salva, tudo na mesma transação
+            EntradaDiario atualizada = entradaDiarioService.atualizarEntradaComMidias(
+                    id, usuario.getId(), titulo, conteudo, temporarios, idsMidiasRemover);
+            return ResponseEntity.ok(new EntradaDiarioResponseDTO(atualizada));
+        } catch (AccessDeniedException e) {
+            // O usuário autenticado não é o dono da entrada
             return ResponseEntity.status(403).build(); // 403 Forbidden
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } finally {
+            temporarios.forEach(armazenamentoMidiaService::descartar);
         }
-
-        entradaExistente.setTitulo(titulo);
-        entradaExistente.setConteudo(conteudo);
-
-        // 1. Remove mídias existentes
-        if (idsMidiasRemover != null && !idsMidiasRemover.isEmpty()) {
-            for (Long midiaId : idsMidiasRemover) {
-                try {
-                    entradaDiarioService.removerMidiaDaEntrada(midiaId, id); // Passa o ID da entrada pra validação
-                } catch (RuntimeException e) {
-                    System.err.println("Erro ao remover mídia com ID " + midiaId + ": " + e.getMessage());
-                }
-            }
-        }
-
-        // 2. Adicionar novas mídias
-        if (novosArquivos != null && !novosArquivos.isEmpty()) {
-            for (MultipartFile file : novosArquivos) {
-                if (!file.isEmpty()) {
-                    try {
-                        String tipoArquivo = inferirTipoArquivo(file);
-                        entradaDiarioService.anexarMidiaAEntrada(entradaExistente.getId(), file, tipoArquivo);
-                    } catch (RuntimeException e) {
-                        System.err.println("Erro ao anexar novo arquivo " + file.getOriginalFilename() + ": " + e.getMessage());
-                    }
-                }
-            }
-        }
-
-        // Salva as alterações na EntradaDiario. As mídias já foram tratadas lá no service.
-        EntradaDiario atualizada = entradaDiarioService.atualizarEntrada(entradaExistente);
-
-        // Tem que buscar a entrada novamente para garantir que a lista 'midias' esteja populada
-        // E converter para DTO antes de retornar
-        return ResponseEntity.ok(entradaDiarioService.buscarPorId(atualizada.getId())
-                .map(EntradaDiarioResponseDTO::new) // Converte para DTO
-                .orElseThrow(() -> new RuntimeException("Erro ao buscar entrada atualizada para serialização.")));
     }
 
     /**
@@ -290,56 +512,20 @@ public class EntradaDiarioController {
      * Verifica se o usuário autenticado é o proprietário da entrada antes de deletar.
      *
      * @param id        O ID da entrada a ser deletada.
-     * @param principal Objeto Principal que representa o usuário autenticado.
+     * @param usuario   O usuário autenticado.
      * @return Resposta sem conteúdo (204 No Content) se a deleção for bem-sucedida,
      * 404 Not Found se a entrada não existir, ou 403 Forbidden se o usuário não for o dono.
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deletarEntrada(@PathVariable Long id, Principal principal) {
-        Optional<EntradaDiario> entradaOpt = entradaDiarioService.buscarPorId(id);
-
-        if (entradaOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        EntradaDiario entrada = entradaOpt.get();
-
-        String username = principal.getName();
-        Usuario usuario = usuarioService.buscarPorUsername(username)
-                .orElseThrow(() -> new RuntimeException("Usuário não encontrado"));
-
-        if (!entrada.getUsuario().getId().equals(usuario.getId())) {
+    public ResponseEntity<Void> deletarEntrada(@PathVariable Long id, @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            // O dono é conferido na mesma consulta que carrega a entrada, dentro da transação da deleção
+            if (!entradaDiarioService.deletarEntrada(id, usuario.getId())) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (AccessDeniedException e) {
             return ResponseEntity.status(403).build(); // Forbidden, meu chapa
         }
-
-        entradaDiarioService.deletarEntrada(id);
         return ResponseEntity.noContent().build();
     }
-
-
-    /**
-     * Método auxiliar para inferir o tipo de arquivo com base no Content-Type.
-     *
-     * @param file O MultipartFile.
-     * @return Uma string representando o tipo de arquivo (ex: "imagem", "video", "documento_pdf").
-     */
-    private String inferirTipoArquivo(MultipartFile file) {
-        String contentType = file.getContentType();
-        if (contentType == null) {
-            return "desconhecido";
-        }
-        if (contentType.startsWith("image/")) {
-            return "imagem";
-        } else if (contentType.startsWith("video/")) {
-            return "video";
-        } else if (contentType.startsWith("audio/")) {
-            return "audio";
-        } else if (contentType.equals("application/pdf")) {
-            return "documento_pdf";
-        } else if (contentType.equals("application/msword") || contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-            return "documento_word";
-        }
-        // Dá pra meter mais tipos MIME depois
-        return "outro_documento";
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package com.diario.controller;
+
+import com.diario.config.UsuarioAtual;
+import com.diario.dto.MidiaEntradaDTO;
+import com.diario.dto.SessaoUploadDTO;
+import com.diario.model.MidiaEntrada;
+import com.diario.model.SessaoUpload;
+import com.diario.model.UsuarioAutenticado;
+import com.diario.service.UploadRetomavelService;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Controlador REST do upload retomável em pedaços, pra anexos grandes e conexões que caem.
+ * Fluxo: POST cria a sessão, PUT manda cada faixa de bytes (Content-Range), HEAD/GET diz o offset
+ * pra retomar, e POST .../finalizar transforma o arquivo numa mídia da entrada.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+    // Ex: "bytes 0-1048575/5242880"
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    // Cabeçalho com o próximo byte esperado, no mesmo espírito do protocolo tus
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    @Autowired
+    private UploadRetomavelService uploadRetomavelService;
+
+    /**
+     * Cria uma sessão de upload.
+     *
+     * @param request   Nome, tamanho total e Content-Type do arquivo.
+     * @param usuario   O usuário autenticado.
+     * @return 201 Created com a sessão (offset zero), ou 400 se o tamanho for inválido.
+     */
+    @PostMapping
+    public ResponseEntity<?> criarSessao(@RequestBody NovaSessaoRequest request, @UsuarioAtual UsuarioAutenticado usuario) {
+        try {
+            SessaoUpload sessao = uploadRetomavelService.criarSessao(
+                    usuario.getId(), request.getNomeArquivo(), request.getTamanho(), request.getContentType());
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(new SessaoUploadDTO(sessao));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Consulta a sessão, principalmente o offset pra retomar depois de cair a conexão.
+     *
+     * @param id        O ID da sessão.
+     * @param usuario   O usuário autenticado.
+     * @return A sessão com o offset atual, ou 404 se não existe/expirou.
+     */
+    @RequestMapping(value = "/{id}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public ResponseEntity<SessaoUploadDTO> consultarSessao(@PathVariable String id, @UsuarioAtual UsuarioAutenticado usuario) {
+        return uploadRetomavelService.buscarSessao(id, usuario.getId())
+                .map(sessao -> ResponseEntity.ok()
+                        .header(UPLOAD_OFFSET, sessao.getBytesRecebidos().toString())
+                        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                        .body(new SessaoUploadDTO(sessao)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Recebe uma faixa de bytes. O corpo é o conteúdo cru (application/octet-stream) e o
+     * cabeçalho Content-Range diz onde ele começa; tem que começar exatamente no offset atual.
+     *
+     * @param id           O ID da sessão.
+     * @param contentRange Ex: "bytes 0-1048575/5242880".
+     * @param request      A requisição, de onde o corpo é lido em streaming.
+     * @param usuario      O usuário autenticado.
+     * @return A sessão com o novo offset; 409 Conflict (com o offset certo) se a faixa não começa nele;
+     * 400 se o Content-Range for inválido; 404 se a sessão não existe.
+     * @throws IOException Se der erro gravando no disco.
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> receberPedaco(@PathVariable String id,
+                                           @RequestHeader(value = HttpHeaders.CONTENT_RANGE, required = false) String contentRange,
+                                           HttpServletRequest request,
+                                           @UsuarioAtual UsuarioAutenticado usuario) throws IOException {
+        Optional<SessaoUpload> sessaoOpt = uploadRetomavelService.buscarSessao(id, usuario.getId());
+        if (sessaoOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        SessaoUpload sessao = sessaoOpt.get();
+
+        Matcher faixa = contentRange != null ? CONTENT_RANGE.matcher(contentRange.trim()) : null;
+        if (faixa == null || !faixa.matches()
+                || Long.parseLong(faixa.group(3)) != sessao.getTamanhoTotal()
+                || Long.parseLong(faixa.group(2)) < Long.parseLong(faixa.group(1))) {
+            return ResponseEntity.badRequest().body("Content-Range inválido. Use: bytes inicio-fim/" + sessao.getTamanhoTotal());
+        }
+        long inicio = Long.parseLong(faixa.group(1));
+        long tamanho = Long.parseLong(faixa.group(2)) - inicio + 1;
+
+        try {
+            SessaoUpload atualizada = uploadRetomavelService.receberPedaco(sessao, inicio, tamanho, request.getInputStream());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, atualizada.getBytesRecebidos().toString())
+                    .body(new SessaoUploadDTO(atualizada));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            long offsetAtual = uploadRetomavelService.buscarSessao(id, usuario.getId())
+                    .map(SessaoUpload::getBytesRecebidos)
+                    .orElse(sessao.getBytesRecebidos());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, Long.toString(offsetAtual))
+                    .body(Map.of("erro", e.getMessage(), "offset", offsetAtual));
+        }
+    }
+
+    /**
+     * Termina o upload e anexa o arquivo a uma entrada do usuário.
+     *
+     * @param id        O ID da sessão.
+     * @param entradaId A entrada que recebe a mídia.
+     * @param usuario   O usuário autenticado.
+     * @return A mídia criada; 409 (com o offset certo) se ainda faltam bytes ou o arquivo tem que ser reenviado;
+     * 403 se a entrada é de outro usuário; 404 se a sessão ou a entrada não existe.
+     * @throws IOException Se der erro lendo o arquivo parcial.
+     */
+    @PostMapping("/{id}/finalizar")
+    public ResponseEntity<?> finalizar(@PathVariable String id, @RequestParam Long entradaId, @UsuarioAtual UsuarioAutenticado usuario) throws IOException {
+        Optional<SessaoUpload> sessaoOpt = uploadRetomavelService.buscarSessao(id, usuario.getId());
+        if (sessaoOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            Optional<MidiaEntrada> midia = uploadRetomavelService.finalizar(sessaoOpt.get(), entradaId, usuario.getId());
+            if (midia.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new MidiaEntradaDTO(midia.get()));
+        } catch (IllegalStateException e) {
+            long offsetAtual = uploadRetomavelService.buscarSessao(id, usuario.getId())
+                    .map(SessaoUpload::getBytesRecebidos)
+                    .orElse(sessaoOpt.get().getBytesRecebidos());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, Long.toString(offsetAtual))
+                    .body(Map.of("erro", e.getMessage(), "offset", offsetAtual));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(403).build();
+        }
+    }
+
+    @Data
+    public static class NovaSessaoRequest {
+        private String nomeArquivo;
+        private Long tamanho;
+        private String contentType;
+    }
+}
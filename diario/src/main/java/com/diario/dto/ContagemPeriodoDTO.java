@@ -0,0 +1,16 @@
+package com.diario.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContagemPeriodoDTO {
+    private LocalDate inicio; // Primeiro dia do período (o dia, a segunda-feira da semana ou o dia 1 do mês)
+    private long entradas;
+    private long midias;
+}
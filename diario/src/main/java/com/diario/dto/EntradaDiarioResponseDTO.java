@@ -1,10 +1,12 @@
 package com.diario.dto;
 
 import com.diario.model.EntradaDiario;
+import com.diario.model.MidiaEntrada;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -12,7 +14,7 @@ import java.util.stream.Collectors;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class EntradaDiarioResponseDTO {
+public class EntradaDiarioResponseDTO implements Serializable { // Serializável pra caber num cache compartilhado
 
     private Long id;
     private LocalDate data;
@@ -21,33 +23,32 @@ public class EntradaDiarioResponseDTO {
     private String conteudo;
     private String caminhoImagem;
     private Long usuarioId;
-    private String usuarioNome;
 
     // Lista de mídias, usando o MidiaEntradaDTO
     private List<MidiaEntradaDTO> midias;
 
     // Construtor para mapear de EntradaDiario (entidade) pra EntradaDiarioResponseDTO
     public EntradaDiarioResponseDTO(EntradaDiario entrada) {
+        this(entrada, entrada.getMidias());
+    }
+
+    // Com as mídias já carregadas à parte (listagem), sem tocar na coleção lazy da entrada
+    public EntradaDiarioResponseDTO(EntradaDiario entrada, List<MidiaEntrada> midias) {
         this.id = entrada.getId();
         this.data = entrada.getData();
         this.titulo = entrada.getTitulo();
         this.conteudo = entrada.getConteudo();
         this.caminhoImagem = entrada.getCaminhoImagem();
 
+        // Só o ID do dono: o usuário pode ser uma referência não carregada, e ler outro campo dispararia um SELECT
         if (entrada.getUsuario() != null) {
             this.usuarioId = entrada.getUsuario().getId();
-            this.usuarioNome = entrada.getUsuario().getNome();
         }
 
         // Mapeia a lista de MidiaEntrada para MidiaEntradaDTO
-        if (entrada.getMidias() != null) {
-            this.midias = entrada.getMidias().stream()
-                    .map(midia -> new MidiaEntradaDTO(
-                            midia.getId(),
-                            midia.getNomeOriginalArquivo(),
-                            midia.getCaminhoArquivo(),
-                            midia.getTipoArquivo()
-                    ))
+        if (midias != null) {
+            this.midias = midias.stream()
+                    .map(MidiaEntradaDTO::new)
                     .collect(Collectors.toList());
         } else {
             this.midias = List.of(); // Garante uma lista vazia, não nula, te liga
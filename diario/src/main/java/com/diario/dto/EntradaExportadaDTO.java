@@ -0,0 +1,24 @@
+package com.diario.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uma linha do arquivo de exportação (NDJSON): a entrada inteira com os dados das mídias.
+ * No ZIP, cada mídia vai em midias/ com o nome do arquivo no armazenamento (hashConteudo + extensão).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntradaExportadaDTO {
+    private Long id;
+    private LocalDate data;
+    private String titulo;
+    private String conteudo;
+    private List<MidiaEntradaDTO> midias = new ArrayList<>();
+}
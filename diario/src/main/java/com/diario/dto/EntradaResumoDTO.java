@@ -0,0 +1,34 @@
+package com.diario.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Versão enxuta da entrada pra linha do tempo: sem o conteúdo inteiro nem a lista de mídias,
+ * só o trecho gravado na escrita e as quantidades de mídia por tipo.
+ */
+@Data
+@NoArgsConstructor
+public class EntradaResumoDTO implements Serializable {
+    private Long id;
+    private LocalDate data;
+    private String titulo;
+    private String resumo; // Começo do conteúdo, gravado junto com a entrada
+
+    private long totalMidias;
+    private Map<String, Long> midiasPorTipo = new HashMap<>(); // Ex: {"imagem": 3, "audio": 1}
+    private String miniatura; // Nome público da primeira imagem, pra pedir com ?variante=miniatura; nulo sem imagens
+
+    // Usado pela projeção JPQL (SELECT new ...), que não lê a coluna conteudo
+    public EntradaResumoDTO(Long id, LocalDate data, String titulo, String resumo) {
+        this.id = id;
+        this.data = data;
+        this.titulo = titulo;
+        this.resumo = resumo;
+    }
+}
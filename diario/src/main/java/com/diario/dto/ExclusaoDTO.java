@@ -0,0 +1,19 @@
+package com.diario.dto;
+
+import com.diario.model.ExclusaoDiario;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExclusaoDTO {
+    private Long entradaId;
+    private Long midiaId; // Nulo quando a entrada inteira foi apagada
+
+    public ExclusaoDTO(ExclusaoDiario exclusao) {
+        this.entradaId = exclusao.getEntradaId();
+        this.midiaId = exclusao.getMidiaId();
+    }
+}
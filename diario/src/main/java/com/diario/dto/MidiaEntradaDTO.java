@@ -1,16 +1,41 @@
 package com.diario.dto;
 
+import com.diario.model.MidiaEntrada;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class MidiaEntradaDTO {
+public class MidiaEntradaDTO implements Serializable {
     private Long id;
     private String nomeOriginalArquivo;
-    private String caminhoArquivo;
     private String tipoArquivo;
 
+    // Metadados gravados no upload, pro cliente montar a galeria antes de baixar os arquivos
+    private String contentType;
+    private Long tamanhoBytes;
+    private Integer largura;
+    private Integer altura;
+    private Long duracaoMs;
+    private String hashConteudo;
+
+    // Nome pra montar a URL do arquivo: /api/entradas/arquivo/{nomePublico}. O caminho no disco não sai do servidor
+    private String nomePublico;
+
+    public MidiaEntradaDTO(MidiaEntrada midia) {
+        this.id = midia.getId();
+        this.nomeOriginalArquivo = midia.getNomeOriginalArquivo();
+        this.tipoArquivo = midia.getTipoArquivo();
+        this.contentType = midia.getContentType();
+        this.tamanhoBytes = midia.getTamanhoBytes();
+        this.largura = midia.getLargura();
+        this.altura = midia.getAltura();
+        this.duracaoMs = midia.getDuracaoMs();
+        this.hashConteudo = midia.getHashConteudo();
+        this.nomePublico = midia.getNomePublico();
+    }
 }
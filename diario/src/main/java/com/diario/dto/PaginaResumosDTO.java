@@ -0,0 +1,16 @@
+package com.diario.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaResumosDTO implements Serializable {
+    private List<EntradaResumoDTO> entradas;
+    private String proximoCursor; // Nulo quando não tem mais páginas
+}
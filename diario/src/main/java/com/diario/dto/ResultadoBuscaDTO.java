@@ -0,0 +1,19 @@
+package com.diario.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoBuscaDTO {
+    private Long id;
+    private LocalDate data;
+    private String titulo;
+    private String tituloDestacado; // HTML já escapado, com os termos achados entre <mark></mark>
+    private String trecho; // Pedaço do conteúdo em volta dos termos, mesmo formato
+    private float relevancia;
+}
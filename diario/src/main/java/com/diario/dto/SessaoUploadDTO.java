@@ -0,0 +1,27 @@
+package com.diario.dto;
+
+import com.diario.model.SessaoUpload;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessaoUploadDTO {
+    private String id;
+    private String nomeArquivo;
+    private Long tamanho;
+    private Long offset; // Próximo byte que o servidor espera
+    private LocalDateTime expiraEm;
+
+    public SessaoUploadDTO(SessaoUpload sessao) {
+        this.id = sessao.getId();
+        this.nomeArquivo = sessao.getNomeOriginalArquivo();
+        this.tamanho = sessao.getTamanhoTotal();
+        this.offset = sessao.getBytesRecebidos();
+        this.expiraEm = sessao.getExpiraEm();
+    }
+}
@@ -0,0 +1,21 @@
+package com.diario.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * O que mudou no diário depois do cursor do cliente: as entradas gravadas (completas, com as mídias atuais)
+ * e o que foi apagado. O cliente aplica tudo e guarda o proximoCursor pra próxima vez.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SincronizacaoDTO {
+    private List<EntradaDiarioResponseDTO> alteradas;
+    private List<ExclusaoDTO> excluidas;
+    private String proximoCursor; // Sempre preenchido: é com ele que o cliente pergunta de novo depois
+    private boolean temMais; // Verdadeiro se já tem mais alterações pra buscar agora, sem esperar
+}
@@ -0,0 +1,37 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Arquivo físico guardado uma vez só no disco, identificado pelo SHA-256 do conteúdo.
+ * Várias MidiaEntrada podem apontar pro mesmo arquivo; o contador de referências
+ * diz quando o último uso sumiu e os bytes podem ser apagados.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "arquivo_midia")
+public class ArquivoMidia {
+
+    @Id
+    @Column(name = "hash_conteudo", length = 64)
+    private String hashConteudo;
+
+    @Column(name = "nome_arquivo", nullable = false, unique = true, length = 255)
+    private String nomeArquivo; // <hash>.<extensão>, é o nome do arquivo no disco
+
+    @Column(name = "tamanho_bytes", nullable = false)
+    private Long tamanhoBytes;
+
+    @Column(name = "referencias", nullable = false)
+    private Integer referencias;
+
+    @Column(name = "data_criacao", nullable = false)
+    private LocalDateTime dataCriacao;
+}
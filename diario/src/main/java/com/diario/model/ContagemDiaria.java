@@ -0,0 +1,37 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Quantas entradas e mídias um usuário tem em cada dia, mantido a cada gravação de entrada.
+ * O calendário lê só essas linhas (no máximo uma por dia) em vez de contar entrada_diario.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "contagem_diaria",
+        uniqueConstraints = @UniqueConstraint(name = "uk_contagem_diaria_usuario_dia", columnNames = {"usuario_id", "dia"}))
+public class ContagemDiaria {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "dia", nullable = false)
+    private LocalDate dia;
+
+    @Column(name = "entradas", nullable = false)
+    private Integer entradas;
+
+    @Column(name = "midias", nullable = false)
+    private Integer midias;
+}
@@ -11,10 +11,18 @@ import java.util.List;
 
 @Entity
 @Data
+@Table(name = "entrada_diario",
+        indexes = {
+                @Index(name = "idx_entrada_diario_usuario_data_id", columnList = "usuario_id, data, id"),
+                @Index(name = "idx_entrada_diario_usuario_versao_id", columnList = "usuario_id, alterada_na_versao, id")
+        })
 public class EntradaDiario {
 
+    // IDs reservados em blocos de 50 na tabela gerador_id (IDENTITY desliga os lotes JDBC do Hibernate)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "id_entrada_diario")
+    @TableGenerator(name = "id_entrada_diario", table = "gerador_id", pkColumnName = "tabela",
+            valueColumnName = "proximo_id", pkColumnValue = "entrada_diario", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
@@ -30,12 +38,42 @@ public class EntradaDiario {
     @Column(columnDefinition = "TEXT")
     private String conteudo;
 
+    // Começo do conteúdo, recalculado a cada gravação, pra listagem resumida não ler a coluna TEXT
+    @Column(name = "resumo", length = 255)
+    private String resumo;
+
     private String caminhoImagem;
 
+    // Versão do diário do dono (VersaoDiario) na última gravação da entrada ou das mídias dela,
+    // pra sincronização trazer só o que mudou depois do cursor do cliente
+    @Column(name = "alterada_na_versao", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long alteradaNaVersao = 0L;
+
     @OneToMany(mappedBy = "entradaDiario", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @JsonManagedReference
     private List<MidiaEntrada> midias = new ArrayList<>();
 
+    private static final int TAMANHO_RESUMO = 200;
+
+    @PrePersist
+    @PreUpdate
+    void atualizarResumo() {
+        if (conteudo == null) {
+            resumo = null;
+            return;
+        }
+        String texto = conteudo.strip().replaceAll("\\s+", " ");
+        if (texto.length() <= TAMANHO_RESUMO) {
+            resumo = texto;
+            return;
+        }
+        int fim = TAMANHO_RESUMO;
+        if (Character.isHighSurrogate(texto.charAt(fim - 1))) {
+            fim--; // Não corta um emoji no meio
+        }
+        resumo = texto.substring(0, fim).stripTrailing() + "…";
+    }
+
     // Pra adicionar/remover mídias
     public void addMidia(MidiaEntrada midia) {
         if (this.midias == null) {
@@ -0,0 +1,58 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Registro de algo apagado do diário (entrada ou mídia), pra sincronização avisar os clientes
+ * que já tinham a cópia. Gravado na mesma transação que apaga, com a versão do diário dessa gravação;
+ * os registros antigos são descartados depois de um tempo.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "exclusao_diario",
+        indexes = {
+                @Index(name = "idx_exclusao_diario_usuario_versao", columnList = "usuario_id, versao"),
+                @Index(name = "idx_exclusao_diario_criada_em", columnList = "criada_em")
+        })
+public class ExclusaoDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "versao", nullable = false)
+    private Long versao;
+
+    @Column(name = "entrada_id", nullable = false)
+    private Long entradaId;
+
+    @Column(name = "midia_id")
+    private Long midiaId; // Nulo quando a entrada inteira foi apagada
+
+    @Column(name = "criada_em", nullable = false)
+    private LocalDateTime criadaEm;
+
+    public static ExclusaoDiario daEntrada(Long usuarioId, long versao, Long entradaId) {
+        return daMidia(usuarioId, versao, entradaId, null);
+    }
+
+    public static ExclusaoDiario daMidia(Long usuarioId, long versao, Long entradaId, Long midiaId) {
+        ExclusaoDiario exclusao = new ExclusaoDiario();
+        exclusao.setUsuarioId(usuarioId);
+        exclusao.setVersao(versao);
+        exclusao.setEntradaId(entradaId);
+        exclusao.setMidiaId(midiaId);
+        exclusao.setCriadaEm(LocalDateTime.now());
+        return exclusao;
+    }
+}
@@ -5,14 +5,23 @@ import lombok.Data;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Entity
 @Data
-@Table(name = "midia_entrada")
+@Table(name = "midia_entrada",
+        indexes = {
+                @Index(name = "idx_midia_entrada_caminho_arquivo", columnList = "caminho_arquivo"),
+                @Index(name = "idx_midia_entrada_hash_conteudo", columnList = "hash_conteudo"),
+                @Index(name = "idx_midia_entrada_nome_publico", columnList = "nome_publico", unique = true)
+        })
 public class MidiaEntrada {
 
+    // IDs reservados em blocos de 50 na tabela gerador_id (IDENTITY desliga os lotes JDBC do Hibernate)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "id_midia_entrada")
+    @TableGenerator(name = "id_midia_entrada", table = "gerador_id", pkColumnName = "tabela",
+            valueColumnName = "proximo_id", pkColumnValue = "midia_entrada", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -32,6 +41,30 @@ public class MidiaEntrada {
     @Column(name = "data_upload", nullable = false)
     private LocalDateTime dataUpload;
 
+    @Column(name = "hash_conteudo", length = 64)
+    private String hashConteudo; // SHA-256 do arquivo em arquivo_midia; nulo nas mídias antigas, de antes da deduplicação
+
+    // Nome usado na URL pública (UUID + extensão), um por mídia. O arquivo no disco tem o nome do hash,
+    // que qualquer um com uma cópia do conteúdo consegue calcular, então ele nunca sai do servidor
+    @Column(name = "nome_publico", length = 64, unique = true)
+    private String nomePublico;
+
+    // Metadados lidos uma vez no upload (ou pelo preenchimento em segundo plano, nas mídias antigas)
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "tamanho_bytes")
+    private Long tamanhoBytes;
+
+    @Column(name = "largura")
+    private Integer largura; // Só imagens
+
+    @Column(name = "altura")
+    private Integer altura; // Só imagens
+
+    @Column(name = "duracao_ms")
+    private Long duracaoMs; // Só áudio/vídeo, quando o formato diz no cabeçalho
+
     public MidiaEntrada() {
     }
 
@@ -40,9 +73,17 @@ public class MidiaEntrada {
         this.tipoArquivo = tipoArquivo;
         this.caminhoArquivo = caminhoArquivo;
         this.nomeOriginalArquivo = nomeOriginalArquivo;
+        this.nomePublico = gerarNomePublico(caminhoArquivo);
         this.dataUpload = LocalDateTime.now();
     }
 
+    // UUID com a extensão do arquivo, pro navegador e quem baixar saberem o tipo
+    private static String gerarNomePublico(String caminhoArquivo) {
+        String nome = caminhoArquivo.substring(Math.max(caminhoArquivo.lastIndexOf('/'), caminhoArquivo.lastIndexOf('\\')) + 1);
+        int ponto = nome.lastIndexOf('.');
+        return UUID.randomUUID() + (ponto >= 0 ? nome.substring(ponto) : "");
+    }
+
     // Uso na lógica
     @Override
     public String toString() {
@@ -53,6 +94,10 @@ public class MidiaEntrada {
                 ", caminhoArquivo='" + caminhoArquivo + '\'' +
                 ", nomeOriginalArquivo='" + nomeOriginalArquivo + '\'' +
                 ", dataUpload=" + dataUpload +
+                ", hashConteudo='" + hashConteudo + '\'' +
+                ", nomePublico='" + nomePublico + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", tamanhoBytes=" + tamanhoBytes +
                 '}';
     }
 }
@@ -0,0 +1,45 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Refresh token de uma sessão de login. Só o SHA-256 fica no banco; cada um serve uma vez só
+ * e é trocado por outro na renovação. Usar de novo um que já foi trocado revoga a sessão inteira
+ * (alguém copiou o token).
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "refresh_token",
+        indexes = {
+                @Index(name = "idx_refresh_token_hash", columnList = "hash_token", unique = true),
+                @Index(name = "idx_refresh_token_sessao", columnList = "sessao_id"),
+                @Index(name = "idx_refresh_token_expira_em", columnList = "expira_em")
+        })
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sessao_id", nullable = false, length = 36)
+    private String sessaoId;
+
+    @Column(name = "hash_token", nullable = false, length = 64)
+    private String hashToken;
+
+    @Column(name = "criado_em", nullable = false)
+    private LocalDateTime criadoEm;
+
+    @Column(name = "expira_em", nullable = false)
+    private LocalDateTime expiraEm;
+
+    @Column(name = "usado_em")
+    private LocalDateTime usadoEm; // Preenchido quando foi trocado por outro
+}
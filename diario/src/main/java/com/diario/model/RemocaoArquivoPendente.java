@@ -0,0 +1,61 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Arquivo físico esperando pra ser apagado (outbox transacional).
+ * A linha é gravada na mesma transação que apaga a mídia, e um worker apaga o arquivo depois do commit;
+ * se a transação volta, a linha some junto e o arquivo fica.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "remocao_arquivo_pendente",
+        indexes = @Index(name = "idx_remocao_arquivo_proxima_tentativa", columnList = "proxima_tentativa"))
+public class RemocaoArquivoPendente {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "nome_arquivo", length = 255)
+    private String nomeArquivo; // Arquivo do armazenamento (original ou variante), procurado nos dois layouts
+
+    @Column(name = "caminho_arquivo", length = 255)
+    private String caminhoArquivo; // Caminho completo gravado numa mídia antiga, de antes do armazenamento por hash
+
+    @Column(name = "tentativas", nullable = false)
+    private Integer tentativas;
+
+    @Column(name = "criada_em", nullable = false)
+    private LocalDateTime criadaEm;
+
+    @Column(name = "proxima_tentativa", nullable = false)
+    private LocalDateTime proximaTentativa;
+
+    public static RemocaoArquivoPendente doArmazenamento(String nomeArquivo) {
+        RemocaoArquivoPendente remocao = nova();
+        remocao.setNomeArquivo(nomeArquivo);
+        return remocao;
+    }
+
+    public static RemocaoArquivoPendente doCaminho(String caminhoArquivo) {
+        RemocaoArquivoPendente remocao = nova();
+        remocao.setCaminhoArquivo(caminhoArquivo);
+        return remocao;
+    }
+
+    private static RemocaoArquivoPendente nova() {
+        RemocaoArquivoPendente remocao = new RemocaoArquivoPendente();
+        remocao.setTentativas(0);
+        remocao.setCriadaEm(LocalDateTime.now());
+        remocao.setProximaTentativa(remocao.getCriadaEm());
+        return remocao;
+    }
+}
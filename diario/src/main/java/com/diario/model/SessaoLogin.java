@@ -0,0 +1,43 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Um login de um usuário num cliente: a família dos refresh tokens que vão sendo trocados a cada renovação.
+ * O ID vai nos tokens de acesso (claim sid); revogar a sessão derruba os refresh tokens dela e,
+ * pelo filtro em memória, os tokens de acesso que ainda não expiraram.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "sessao_login",
+        indexes = {
+                @Index(name = "idx_sessao_login_usuario", columnList = "usuario_id"),
+                @Index(name = "idx_sessao_login_revogada_em", columnList = "revogada_em"),
+                @Index(name = "idx_sessao_login_expira_em", columnList = "expira_em")
+        })
+public class SessaoLogin {
+
+    @Id
+    @Column(length = 36)
+    private String id; // UUID
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "criada_em", nullable = false)
+    private LocalDateTime criadaEm;
+
+    // Até quando dá pra renovar; cada renovação empurra pra frente
+    @Column(name = "expira_em", nullable = false)
+    private LocalDateTime expiraEm;
+
+    @Column(name = "revogada_em")
+    private LocalDateTime revogadaEm; // Nulo enquanto a sessão vale
+}
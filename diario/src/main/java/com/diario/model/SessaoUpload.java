@@ -0,0 +1,45 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Upload em pedaços ainda em andamento. Os bytes vão direto pro arquivo parcial
+ * na pasta temporária do armazenamento; aqui fica só quanto já chegou e até quando a sessão vale.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "sessao_upload", indexes = @Index(name = "idx_sessao_upload_expira_em", columnList = "expira_em"))
+public class SessaoUpload {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id; // UUID, também é o nome do arquivo parcial
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "nome_original_arquivo", length = 255)
+    private String nomeOriginalArquivo;
+
+    @Column(name = "content_type", length = 255)
+    private String contentType;
+
+    @Column(name = "tamanho_total", nullable = false)
+    private Long tamanhoTotal;
+
+    @Column(name = "bytes_recebidos", nullable = false)
+    private Long bytesRecebidos;
+
+    @Column(name = "criada_em", nullable = false)
+    private LocalDateTime criadaEm;
+
+    @Column(name = "expira_em", nullable = false)
+    private LocalDateTime expiraEm;
+}
@@ -0,0 +1,62 @@
+package com.diario.model;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Usuário de uma requisição autenticada por token: só o ID e o username que vieram assinados no JWT,
+ * sem a entidade nem a senha. É o principal que o filtro JWT põe no contexto de segurança.
+ */
+@SuppressWarnings("serial")
+public class UsuarioAutenticado implements UserDetails {
+
+    private final Long id;
+    private final String username;
+
+    public UsuarioAutenticado(Long id, String username) {
+        this.id = id;
+        this.username = username;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return null; // a senha já foi conferida no login
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
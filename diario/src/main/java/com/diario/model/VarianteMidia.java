@@ -0,0 +1,47 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Versão reduzida de um arquivo de mídia (miniatura de imagem, prévia da primeira página do PDF).
+ * Fica ligada ao conteúdo (hash_conteudo), então toda MidiaEntrada com o mesmo arquivo aproveita.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "variante_midia",
+        uniqueConstraints = @UniqueConstraint(name = "uk_variante_midia_hash_variante", columnNames = {"hash_conteudo", "variante"}),
+        indexes = @Index(name = "idx_variante_midia_nome_arquivo", columnList = "nome_arquivo"))
+public class VarianteMidia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "hash_conteudo", nullable = false, length = 64)
+    private String hashConteudo;
+
+    @Column(name = "variante", nullable = false, length = 20)
+    private String variante; // Ex: 'miniatura', 'media'
+
+    @Column(name = "nome_arquivo", nullable = false, length = 255)
+    private String nomeArquivo;
+
+    @Column(name = "largura", nullable = false)
+    private Integer largura;
+
+    @Column(name = "altura", nullable = false)
+    private Integer altura;
+
+    @Column(name = "tamanho_bytes", nullable = false)
+    private Long tamanhoBytes;
+
+    @Column(name = "data_criacao", nullable = false)
+    private LocalDateTime dataCriacao;
+}
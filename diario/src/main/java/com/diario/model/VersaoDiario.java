@@ -0,0 +1,31 @@
+package com.diario.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Contador de alterações do diário de um usuário, somado a cada gravação de entrada ou mídia.
+ * As respostas de leitura usam ele como ETag: se não mudou, o cliente já tem a versão atual.
+ * Usuário sem linha ainda não gravou nada desde que a tabela existe (versão 0).
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "versao_diario")
+public class VersaoDiario {
+
+    @Id
+    @Column(name = "usuario_id")
+    private Long usuarioId;
+
+    @Column(name = "versao", nullable = false)
+    private Long versao;
+
+    // Até que versão as exclusões já foram descartadas: cursor de sincronização mais velho que isso não serve mais
+    @Column(name = "exclusoes_descartadas_ate")
+    private Long exclusoesDescartadasAte;
+}
@@ -0,0 +1,52 @@
+package com.diario.repository;
+
+import com.diario.model.ArquivoMidia;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ArquivoMidiaRepository extends JpaRepository<ArquivoMidia, String> {
+
+    // Cria o registro do arquivo com uma referência, ou soma mais uma se o conteúdo já existe.
+    // Num comando só pra dois uploads iguais ao mesmo tempo não brigarem pela chave primária.
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO arquivo_midia (hash_conteudo, nome_arquivo, tamanho_bytes, referencias, data_criacao) " +
+            "VALUES (:hash, :nome, :tamanho, 1, NOW()) " +
+            "ON DUPLICATE KEY UPDATE referencias = referencias + 1", nativeQuery = true)
+    int registrarReferencia(@Param("hash") String hash, @Param("nome") String nomeArquivo, @Param("tamanho") long tamanhoBytes);
+
+    // Trava a linha até o fim da transação pra ninguém reaproveitar o arquivo enquanto ele é apagado
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM ArquivoMidia a WHERE a.hashConteudo = :hash")
+    Optional<ArquivoMidia> findByHashParaAtualizacao(@Param("hash") String hash);
+
+    // Arquivos desses hashes que o usuário já usa em alguma mídia (importação), travados em ordem de hash
+    // como na remoção, pra ninguém apagar o arquivo enquanto as novas referências entram
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM ArquivoMidia a WHERE a.hashConteudo IN :hashes AND EXISTS (" +
+            "SELECT m.id FROM MidiaEntrada m WHERE m.hashConteudo = a.hashConteudo AND m.entradaDiario.usuario.id = :usuarioId) " +
+            "ORDER BY a.hashConteudo")
+    List<ArquivoMidia> findDoUsuarioParaAtualizacao(@Param("hashes") Collection<String> hashes, @Param("usuarioId") Long usuarioId);
+
+    @Modifying
+    @Query("UPDATE ArquivoMidia a SET a.referencias = a.referencias + :quantidade WHERE a.hashConteudo = :hash")
+    int somarReferencias(@Param("hash") String hash, @Param("quantidade") int quantidade);
+
+    // Arquivos em uso com menos variantes que o esperado (varredura dos derivados), em ordem de hash a partir de um ponto
+    @Query("SELECT a.hashConteudo, a.nomeArquivo FROM ArquivoMidia a WHERE a.referencias > 0 AND a.hashConteudo > :depois " +
+            "AND (SELECT COUNT(v) FROM VarianteMidia v WHERE v.hashConteudo = a.hashConteudo) < :variantes " +
+            "ORDER BY a.hashConteudo")
+    List<Object[]> findSemVariantesApos(@Param("depois") String depois, @Param("variantes") long variantes, Pageable pagina);
+
+    // Quais desses nomes ainda são arquivos registrados (varredura de órfãos)
+    @Query("SELECT a.nomeArquivo FROM ArquivoMidia a WHERE a.nomeArquivo IN :nomes")
+    List<String> findNomesRegistrados(@Param("nomes") Collection<String> nomes);
+}
@@ -0,0 +1,24 @@
+package com.diario.repository;
+
+import com.diario.model.ContagemDiaria;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface ContagemDiariaRepository extends JpaRepository<ContagemDiaria, Long> {
+
+    // Intervalo de dias de um usuário, lido direto pela chave única (usuario_id, dia)
+    List<ContagemDiaria> findByUsuarioIdAndDiaBetweenOrderByDiaAsc(Long usuarioId, LocalDate de, LocalDate ate);
+
+    // Soma (ou subtrai) na linha do dia, criando se não existe; atômico, então gravações simultâneas não se perdem
+    @Modifying
+    @Query(value = "INSERT INTO contagem_diaria (usuario_id, dia, entradas, midias) VALUES (:usuarioId, :dia, :entradas, :midias) " +
+            "ON DUPLICATE KEY UPDATE entradas = entradas + VALUES(entradas), midias = midias + VALUES(midias)",
+            nativeQuery = true)
+    void somar(@Param("usuarioId") Long usuarioId, @Param("dia") LocalDate dia,
+               @Param("entradas") int entradas, @Param("midias") int midias);
+}
@@ -1,17 +1,93 @@
 package com.diario.repository;
 
+import com.diario.dto.EntradaResumoDTO;
 import com.diario.model.EntradaDiario;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface EntradaDiarioRepository extends JpaRepository<EntradaDiario, Long> {
-    List<EntradaDiario> findByUsuarioId(Long usuarioId);
 
-    // Busca EntradaDiario e carrega as mídias (EAGERLY)
-    @Query("SELECT e FROM EntradaDiario e LEFT JOIN FETCH e.midias WHERE e.id = :id")
+    // Primeira página da listagem, mais novas primeiro, lida pelo índice (usuario_id, data, id).
+    // O dono vem no mesmo SELECT; as mídias vêm depois, numa consulta só pra página inteira
+    @Query("SELECT e FROM EntradaDiario e JOIN FETCH e.usuario WHERE e.usuario.id = :usuarioId ORDER BY e.data DESC, e.id DESC")
+    List<EntradaDiario> findPrimeiraPagina(@Param("usuarioId") Long usuarioId, Pageable pageable);
+
+    // Páginas seguintes: continua logo depois do cursor (data, id), sem OFFSET,
+    // então a página 200 custa o mesmo que a primeira
+    @Query("SELECT e FROM EntradaDiario e JOIN FETCH e.usuario WHERE e.usuario.id = :usuarioId " +
+            "AND (e.data < :data OR (e.data = :data AND e.id < :id)) ORDER BY e.data DESC, e.id DESC")
+    List<EntradaDiario> findPaginaApos(@Param("usuarioId") Long usuarioId, @Param("data") LocalDate data,
+                                       @Param("id") Long id, Pageable pageable);
+
+    // Mesmas páginas na versão resumida: só colunas pequenas, sem tocar em conteudo nem nas mídias
+    @Query("SELECT new com.diario.dto.EntradaResumoDTO(e.id, e.data, e.titulo, e.resumo) FROM EntradaDiario e " +
+            "WHERE e.usuario.id = :usuarioId ORDER BY e.data DESC, e.id DESC")
+    List<EntradaResumoDTO> findResumosPrimeiraPagina(@Param("usuarioId") Long usuarioId, Pageable pageable);
+
+    @Query("SELECT new com.diario.dto.EntradaResumoDTO(e.id, e.data, e.titulo, e.resumo) FROM EntradaDiario e " +
+            "WHERE e.usuario.id = :usuarioId AND (e.data < :data OR (e.data = :data AND e.id < :id)) " +
+            "ORDER BY e.data DESC, e.id DESC")
+    List<EntradaResumoDTO> findResumosApos(@Param("usuarioId") Long usuarioId, @Param("data") LocalDate data,
+                                           @Param("id") Long id, Pageable pageable);
+
+    // Leitura em fluxo pra montar o índice de busca: com fetch size MIN_VALUE o driver do MySQL
+    // manda as linhas aos poucos em vez de carregar o resultado inteiro na memória
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT e.id, e.usuario.id, e.titulo, e.conteudo FROM EntradaDiario e")
+    Stream<Object[]> streamTextosParaIndice();
+
+    @Query("SELECT e.id, e.usuario.id, e.titulo, e.conteudo FROM EntradaDiario e WHERE e.id = :id")
+    List<Object[]> findTextoParaIndice(@Param("id") Long id);
+
+    // Exportação: todas as entradas do usuário com as mídias, uma linha por mídia (ou uma só, sem mídia),
+    // em fluxo e na ordem do índice (usuario_id, data, id), então as linhas de cada entrada vêm juntas.
+    // As duas últimas colunas (nome do arquivo pelo hash e, pras mídias antigas sem hash, o caminho) são só pro ZIP
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT e.id, e.data, e.titulo, e.conteudo, m.id, m.nomeOriginalArquivo, m.tipoArquivo, " +
+            "m.contentType, m.tamanhoBytes, m.largura, m.altura, m.duracaoMs, m.hashConteudo, m.nomePublico, " +
+            "a.nomeArquivo, m.caminhoArquivo " +
+            "FROM EntradaDiario e LEFT JOIN e.midias m LEFT JOIN ArquivoMidia a ON a.hashConteudo = m.hashConteudo " +
+            "WHERE e.usuario.id = :usuarioId ORDER BY e.data, e.id, m.id")
+    Stream<Object[]> streamParaExportacao(@Param("usuarioId") Long usuarioId);
+
+    // Texto dos resultados da busca, pros trechos destacados: [id, data, titulo, conteudo]
+    @Query("SELECT e.id, e.data, e.titulo, e.conteudo FROM EntradaDiario e WHERE e.id IN :ids")
+    List<Object[]> findTextosPorIds(@Param("ids") Collection<Long> ids);
+
+    // Sincronização: entradas gravadas depois do cursor (versão, id), na ordem do índice (usuario_id, alterada_na_versao, id)
+    @Query("SELECT e FROM EntradaDiario e JOIN FETCH e.usuario WHERE e.usuario.id = :usuarioId " +
+            "AND (e.alteradaNaVersao > :versao OR (e.alteradaNaVersao = :versao AND e.id > :id)) " +
+            "ORDER BY e.alteradaNaVersao, e.id")
+    List<EntradaDiario> findAlteradasApos(@Param("usuarioId") Long usuarioId, @Param("versao") long versao,
+                                          @Param("id") Long id, Pageable pageable);
+
+    // Marca as entradas dessas mídias com a versão atual do dono (rotinas que regravam mídias em lote)
+    @Modifying
+    @Query(value = "UPDATE entrada_diario e JOIN versao_diario v ON v.usuario_id = e.usuario_id " +
+            "SET e.alterada_na_versao = v.versao " +
+            "WHERE e.id IN (SELECT m.id_entrada_diario FROM midia_entrada m WHERE m.id IN (:midiaIds))",
+            nativeQuery = true)
+    int marcarAlteradasPorMidias(@Param("midiaIds") Collection<Long> midiaIds);
+
+    // Busca EntradaDiario e carrega as mídias e o dono (EAGERLY), tudo num SELECT só
+    @Query("SELECT e FROM EntradaDiario e JOIN FETCH e.usuario LEFT JOIN FETCH e.midias WHERE e.id = :id")
     Optional<EntradaDiario> findByIdWithMidias(@Param("id") Long id);
+
+    @Query("SELECT e.usuario.id FROM EntradaDiario e WHERE e.id = :id")
+    Optional<Long> findDonoPorId(@Param("id") Long id);
+
+    // A entrada com as mídias, só se for do usuário; o dono fica como proxy (só o ID é usado)
+    @Query("SELECT e FROM EntradaDiario e LEFT JOIN FETCH e.midias WHERE e.id = :id AND e.usuario.id = :usuarioId")
+    Optional<EntradaDiario> findDoUsuarioComMidias(@Param("id") Long id, @Param("usuarioId") Long usuarioId);
 }
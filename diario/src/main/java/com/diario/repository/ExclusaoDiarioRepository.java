@@ -0,0 +1,22 @@
+package com.diario.repository;
+
+import com.diario.model.ExclusaoDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ExclusaoDiarioRepository extends JpaRepository<ExclusaoDiario, Long> {
+
+    // Exclusões de um intervalo de versões (de, ate], lidas pelo índice (usuario_id, versao)
+    @Query("SELECT x FROM ExclusaoDiario x WHERE x.usuarioId = :usuarioId AND x.versao > :de AND x.versao <= :ate " +
+            "ORDER BY x.versao, x.id")
+    List<ExclusaoDiario> findEntreVersoes(@Param("usuarioId") Long usuarioId, @Param("de") long de, @Param("ate") long ate);
+
+    @Modifying
+    @Query("DELETE FROM ExclusaoDiario x WHERE x.criadaEm < :limite")
+    int descartarAntesDe(@Param("limite") LocalDateTime limite);
+}
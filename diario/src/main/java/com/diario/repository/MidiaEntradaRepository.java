@@ -1,10 +1,62 @@
 package com.diario.repository;
 
 import com.diario.model.MidiaEntrada;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface MidiaEntradaRepository extends JpaRepository<MidiaEntrada, Long> {
     // Se eu precisar, meto um List<MidiaEntrada> findByEntradaDiarioId(Long entradaId);
-}
\ No newline at end of file
+
+    // Mídias de uma página inteira de entradas num IN só, em vez de uma consulta por entrada
+    @Query("SELECT m FROM MidiaEntrada m WHERE m.entradaDiario.id IN :ids ORDER BY m.id")
+    List<MidiaEntrada> findByEntradaDiarioIdIn(@Param("ids") Collection<Long> ids);
+
+    // Quantidade de mídias por entrada e tipo: [id da entrada, tipo, quantidade]
+    @Query("SELECT m.entradaDiario.id, m.tipoArquivo, COUNT(m) FROM MidiaEntrada m " +
+            "WHERE m.entradaDiario.id IN :ids GROUP BY m.entradaDiario.id, m.tipoArquivo")
+    List<Object[]> contarPorEntradaETipo(@Param("ids") Collection<Long> ids);
+
+    // Nome público da primeira imagem de cada entrada: [id da entrada, nome público]
+    @Query("SELECT m.entradaDiario.id, m.nomePublico FROM MidiaEntrada m WHERE m.id IN (" +
+            "SELECT MIN(p.id) FROM MidiaEntrada p WHERE p.entradaDiario.id IN :ids AND p.tipoArquivo = 'imagem' " +
+            "GROUP BY p.entradaDiario.id)")
+    List<Object[]> findPrimeiraImagemPorEntrada(@Param("ids") Collection<Long> ids);
+
+    // Percorre a tabela em lotes pela chave (keyset), sem OFFSET, pros jobs em segundo plano
+    List<MidiaEntrada> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Mídias antigas ainda sem metadados, em lotes pela chave, pro preenchimento em segundo plano
+    List<MidiaEntrada> findByIdGreaterThanAndContentTypeIsNullOrderByIdAsc(Long id, Pageable pageable);
+
+    // Jobs em segundo plano: UPDATE só da coluna que cada um mexe, condicionado ao valor que ele leu,
+    // pra um não sobrescrever o outro (nem uma gravação do usuário) com a linha inteira carregada antes
+    @Modifying
+    @Query("UPDATE MidiaEntrada m SET m.caminhoArquivo = :novo WHERE m.id = :id AND m.caminhoArquivo = :antigo")
+    int trocarCaminho(@Param("id") Long id, @Param("antigo") String antigo, @Param("novo") String novo);
+
+    @Modifying
+    @Query("UPDATE MidiaEntrada m SET m.contentType = :contentType, m.tamanhoBytes = :tamanhoBytes, m.largura = :largura, " +
+            "m.altura = :altura, m.duracaoMs = :duracaoMs WHERE m.id = :id AND m.contentType IS NULL")
+    int preencherMetadados(@Param("id") Long id, @Param("contentType") String contentType, @Param("tamanhoBytes") Long tamanhoBytes,
+                           @Param("largura") Integer largura, @Param("altura") Integer altura, @Param("duracaoMs") Long duracaoMs);
+
+    // Arquivo por trás do nome público de uma mídia (a URL de /api/entradas/arquivo): [caminho, content type]
+    @Query("SELECT m.caminhoArquivo, m.contentType FROM MidiaEntrada m WHERE m.nomePublico = :nomePublico")
+    List<Object[]> findArquivoPorNomePublico(@Param("nomePublico") String nomePublico);
+
+    // Mídias que o usuário já tem com esses conteúdos (importação copia os metadados delas, não os do arquivo enviado)
+    @Query("SELECT m FROM MidiaEntrada m WHERE m.hashConteudo IN :hashes AND m.entradaDiario.usuario.id = :usuarioId ORDER BY m.id")
+    List<MidiaEntrada> findDoUsuarioPorHash(@Param("hashes") Collection<String> hashes, @Param("usuarioId") Long usuarioId);
+
+    // Quais desses caminhos ainda estão gravados em alguma mídia (varredura de órfãos)
+    @Query("SELECT m.caminhoArquivo FROM MidiaEntrada m WHERE m.caminhoArquivo IN :caminhos")
+    List<String> findCaminhosRegistrados(@Param("caminhos") Collection<String> caminhos);
+}
@@ -0,0 +1,28 @@
+package com.diario.repository;
+
+import com.diario.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    // Trava a linha até o commit: duas renovações com o mesmo token entram em fila e a segunda vê o token já usado
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM RefreshToken r WHERE r.hashToken = :hash")
+    Optional<RefreshToken> findByHashParaAtualizacao(@Param("hash") String hash);
+
+    Optional<RefreshToken> findByHashToken(String hashToken);
+
+    // Vencidos, e os das sessões que já foram descartadas
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.expiraEm < :agora " +
+            "OR NOT EXISTS (SELECT s.id FROM SessaoLogin s WHERE s.id = r.sessaoId)")
+    int descartarEncerrados(@Param("agora") LocalDateTime agora);
+}
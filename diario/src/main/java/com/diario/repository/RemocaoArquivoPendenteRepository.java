@@ -0,0 +1,13 @@
+package com.diario.repository;
+
+import com.diario.model.RemocaoArquivoPendente;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RemocaoArquivoPendenteRepository extends JpaRepository<RemocaoArquivoPendente, Long> {
+
+    List<RemocaoArquivoPendente> findByProximaTentativaLessThanEqualOrderByIdAsc(LocalDateTime agora, Pageable pageable);
+}
@@ -0,0 +1,30 @@
+package com.diario.repository;
+
+import com.diario.model.SessaoLogin;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SessaoLoginRepository extends JpaRepository<SessaoLogin, String> {
+
+    // Revogadas depois do limite: só essas ainda podem ter token de acesso dentro da validade
+    @Query("SELECT s.id, s.revogadaEm FROM SessaoLogin s WHERE s.revogadaEm >= :limite")
+    List<Object[]> findRevogadasDesde(@Param("limite") LocalDateTime limite);
+
+    // Sessões ainda valendo de um usuário (troca de senha derruba todas)
+    @Query("SELECT s.id FROM SessaoLogin s WHERE s.usuarioId = :usuarioId AND s.revogadaEm IS NULL")
+    List<String> findAbertasDoUsuario(@Param("usuarioId") Long usuarioId);
+
+    @Modifying
+    @Query("UPDATE SessaoLogin s SET s.revogadaEm = :agora WHERE s.id = :id AND s.revogadaEm IS NULL")
+    int revogar(@Param("id") String id, @Param("agora") LocalDateTime agora);
+
+    // Vencidas, ou revogadas há mais tempo que qualquer token de acesso delas
+    @Modifying
+    @Query("DELETE FROM SessaoLogin s WHERE s.expiraEm < :agora OR s.revogadaEm < :revogadaAntesDe")
+    int descartarEncerradas(@Param("agora") LocalDateTime agora, @Param("revogadaAntesDe") LocalDateTime revogadaAntesDe);
+}
@@ -0,0 +1,12 @@
+package com.diario.repository;
+
+import com.diario.model.SessaoUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SessaoUploadRepository extends JpaRepository<SessaoUpload, String> {
+
+    List<SessaoUpload> findByExpiraEmBefore(LocalDateTime limite);
+}
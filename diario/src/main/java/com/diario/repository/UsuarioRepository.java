@@ -2,6 +2,9 @@ package com.diario.repository;
 
 import com.diario.model.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -11,4 +14,9 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
 
     Optional<Usuario> findByEmail(String email);
 
+    // Só troca se o hash ainda é o que foi conferido: não desfaz uma redefinição de senha que aconteceu no meio
+    @Modifying
+    @Query("UPDATE Usuario u SET u.senha = :novo WHERE u.id = :id AND u.senha = :anterior")
+    int trocarHashSenha(@Param("id") Long id, @Param("anterior") String anterior, @Param("novo") String novo);
+
 }
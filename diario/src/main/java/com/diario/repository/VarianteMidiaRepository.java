@@ -0,0 +1,23 @@
+package com.diario.repository;
+
+import com.diario.model.VarianteMidia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface VarianteMidiaRepository extends JpaRepository<VarianteMidia, Long> {
+
+    Optional<VarianteMidia> findByHashConteudoAndVariante(String hashConteudo, String variante);
+
+    List<VarianteMidia> findByHashConteudo(String hashConteudo);
+
+    boolean existsByHashConteudoAndVariante(String hashConteudo, String variante);
+
+    // Quais desses nomes ainda são variantes registradas (varredura de órfãos)
+    @Query("SELECT v.nomeArquivo FROM VarianteMidia v WHERE v.nomeArquivo IN :nomes")
+    List<String> findNomesRegistrados(@Param("nomes") Collection<String> nomes);
+}
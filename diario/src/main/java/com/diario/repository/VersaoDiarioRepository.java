@@ -0,0 +1,49 @@
+package com.diario.repository;
+
+import com.diario.model.VersaoDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface VersaoDiarioRepository extends JpaRepository<VersaoDiario, Long> {
+
+    @Query("SELECT v.versao FROM VersaoDiario v WHERE v.usuarioId = :usuarioId")
+    Optional<Long> findVersao(@Param("usuarioId") Long usuarioId);
+
+    // Versão do dono da entrada, numa leitura só pelas duas chaves primárias; sem linha se a entrada não existe
+    // ou é de outro usuário
+    @Query(value = "SELECT COALESCE(v.versao, 0) FROM entrada_diario e " +
+            "LEFT JOIN versao_diario v ON v.usuario_id = e.usuario_id WHERE e.id = :entradaId AND e.usuario_id = :usuarioId",
+            nativeQuery = true)
+    List<Number> findVersaoDoDono(@Param("entradaId") Long entradaId, @Param("usuarioId") Long usuarioId);
+
+    // Soma um na versão do usuário, criando a linha se não existe; atômico, então gravações simultâneas não se perdem
+    @Modifying
+    @Query(value = "INSERT INTO versao_diario (usuario_id, versao) VALUES (:usuarioId, 1) " +
+            "ON DUPLICATE KEY UPDATE versao = versao + 1",
+            nativeQuery = true)
+    void incrementar(@Param("usuarioId") Long usuarioId);
+
+    // Soma um na versão de cada dono dessas mídias (rotinas que regravam mídias de vários usuários)
+    @Modifying
+    @Query(value = "INSERT INTO versao_diario (usuario_id, versao) " +
+            "SELECT DISTINCT e.usuario_id, 1 FROM midia_entrada m JOIN entrada_diario e ON e.id = m.id_entrada_diario " +
+            "WHERE m.id IN (:midiaIds) " +
+            "ON DUPLICATE KEY UPDATE versao = versao + 1",
+            nativeQuery = true)
+    int incrementarDonosDasMidias(@Param("midiaIds") Collection<Long> midiaIds);
+
+    // Antes de descartar exclusões antigas, anota até que versão cada usuário perdeu as dele
+    @Modifying
+    @Query(value = "UPDATE versao_diario v JOIN (SELECT usuario_id, MAX(versao) AS ate FROM exclusao_diario " +
+            "WHERE criada_em < :limite GROUP BY usuario_id) x ON x.usuario_id = v.usuario_id " +
+            "SET v.exclusoes_descartadas_ate = GREATEST(COALESCE(v.exclusoes_descartadas_ate, 0), x.ate)",
+            nativeQuery = true)
+    int marcarExclusoesDescartadas(@Param("limite") LocalDateTime limite);
+}
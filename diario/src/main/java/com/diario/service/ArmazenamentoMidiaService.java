@@ -0,0 +1,480 @@
+package com.diario.service;
+
+import com.diario.model.ArquivoMidia;
+import com.diario.model.MidiaEntrada;
+import com.diario.model.RemocaoArquivoPendente;
+import com.diario.model.VarianteMidia;
+import com.diario.repository.ArquivoMidiaRepository;
+import com.diario.repository.RemocaoArquivoPendenteRepository;
+import com.diario.repository.VarianteMidiaRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Camada de armazenamento dos arquivos de mídia.
+ * Cada conteúdo é gravado uma vez só no disco, com o nome igual ao SHA-256 dos bytes,
+ * e a tabela arquivo_midia conta quantas MidiaEntrada usam aquele arquivo.
+ * As variantes (miniaturas, prévias) ficam junto, com o nome <hash>_<variante>.jpg.
+ * Esses nomes são internos: pra fora cada mídia tem o seu nome público ({@link NomePublicoMidiaService}).
+ */
+@Service
+public class ArmazenamentoMidiaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArmazenamentoMidiaService.class);
+
+    // Subpasta dos arquivos ainda sendo recebidos. Fica dentro da pasta de upload
+    // pra mover pro nome final ser só um rename no mesmo sistema de arquivos
+    private static final String PASTA_TEMPORARIA = ".tmp";
+
+    @Autowired
+    private ArquivoMidiaRepository arquivoMidiaRepository;
+
+    @Autowired
+    private VarianteMidiaRepository varianteMidiaRepository;
+
+    @Autowired
+    private RemocaoArquivoPendenteRepository remocaoArquivoPendenteRepository;
+
+    @Autowired
+    private MetadadosMidiaService metadadosMidiaService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${file.io.threads:4}")
+    private int threadsIo;
+
+    @Value("${file.io.fila:32}")
+    private int tamanhoFilaIo;
+
+    // Executor limitado pras gravações em disco: com a fila cheia quem pediu grava na própria thread,
+    // o que segura a requisição em vez de empilhar arquivos na memória
+    private ThreadPoolExecutor executorIo;
+
+    @PostConstruct
+    void iniciarExecutorIo() {
+        AtomicInteger contador = new AtomicInteger();
+        executorIo = new ThreadPoolExecutor(threadsIo, threadsIo, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(tamanhoFilaIo),
+                tarefa -> {
+                    Thread thread = new Thread(tarefa, "midia-io-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executorIo.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void encerrarExecutorIo() {
+        executorIo.shutdown();
+    }
+
+    /**
+     * Grava vários uploads em paralelo no executor de I/O.
+     * Arquivos vazios são ignorados; um arquivo que falha é registrado no log e fica de fora,
+     * sem derrubar os outros.
+     *
+     * @param arquivos Os arquivos recebidos na requisição (pode ser nulo).
+     * @return Os arquivos temporários gravados com sucesso, na ordem em que chegaram.
+     */
+    public List<ArquivoTemporario> gravarTemporarios(List<MultipartFile> arquivos) {
+        if (arquivos == null || arquivos.isEmpty()) {
+            return List.of();
+        }
+
+        List<CompletableFuture<ArquivoTemporario>> gravacoes = arquivos.stream()
+                .filter(file -> !file.isEmpty())
+                .map(file -> CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return gravarTemporario(file);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, executorIo)
+                        .exceptionally(e -> {
+                            logger.error("Erro ao gravar o arquivo {}: {}", file.getOriginalFilename(), e.getMessage());
+                            return null;
+                        }))
+                .toList();
+
+        return gravacoes.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Grava o upload num arquivo temporário calculando o SHA-256 enquanto os bytes passam,
+     * sem precisar ler o arquivo uma segunda vez, e já lê os metadados (tipo, dimensões, duração).
+     * Não mexe no banco.
+     *
+     * @param file O arquivo MultipartFile recebido da requisição.
+     * @return Os dados do arquivo temporário, prontos pra {@link #confirmar(ArquivoTemporario)}.
+     * @throws IOException Se ocorrer um erro durante a gravação.
+     */
+    public ArquivoTemporario gravarTemporario(MultipartFile file) throws IOException {
+        Path temporario = criarArquivoTemporario();
+        MessageDigest digest = novoDigest();
+
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            long tamanho = Files.copy(in, temporario);
+            String hash = HexFormat.of().formatHex(digest.digest());
+            return new ArquivoTemporario(temporario, hash, extrairExtensao(file.getOriginalFilename()), tamanho,
+                    file.getOriginalFilename(), file.getContentType(),
+                    metadadosMidiaService.extrair(temporario, file.getOriginalFilename(), tamanho));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        }
+    }
+
+    /**
+     * Registra mais uma referência ao conteúdo e coloca o arquivo temporário no lugar definitivo.
+     * Se o mesmo conteúdo já estava guardado, o temporário é descartado e o arquivo existente é reaproveitado.
+     * Tem que rodar dentro da transação que salva a MidiaEntrada.
+     *
+     * @param temporario O arquivo gerado por {@link #gravarTemporario(MultipartFile)}.
+     * @return O registro do arquivo definitivo.
+     * @throws IOException Se ocorrer um erro ao mover o arquivo.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public ArquivoMidia confirmar(ArquivoTemporario temporario) throws IOException {
+        // O upsert trava a linha, então ninguém apaga esse conteúdo até a transação acabar
+        arquivoMidiaRepository.registrarReferencia(temporario.getHash(),
+                temporario.getHash() + temporario.getExtensao(), temporario.getTamanho());
+
+        ArquivoMidia arquivo = arquivoMidiaRepository.findById(temporario.getHash())
+                .orElseThrow(() -> new IllegalStateException("Registro do arquivo sumiu: " + temporario.getHash()));
+
+        Path destino = prepararCaminho(arquivo.getNomeArquivo());
+        try {
+            // Sem REPLACE_EXISTING: o arquivo existente não é reescrito, senão mudaria a data de modificação (e o ETag)
+            Files.move(temporario.getCaminho(), destino);
+        } catch (FileAlreadyExistsException e) {
+            // Conteúdo repetido: o arquivo já está no disco
+            Files.deleteIfExists(temporario.getCaminho());
+        }
+
+        // Miniaturas e prévias são geradas depois do commit
+        eventPublisher.publishEvent(new MidiaArmazenadaEvent(arquivo.getHashConteudo(), arquivo.getNomeArquivo()));
+        return arquivo;
+    }
+
+    /**
+     * Monta um ArquivoTemporario pra um arquivo que já foi gravado na pasta temporária por outro caminho
+     * (ex: upload em pedaços), pronto pra {@link #confirmar(ArquivoTemporario)}. Os metadados são lidos aqui,
+     * então deve ser chamado fora da transação.
+     *
+     * @param caminho      O arquivo na pasta temporária.
+     * @param hash         O SHA-256 do conteúdo, em hexa.
+     * @param tamanho      O tamanho em bytes.
+     * @param nomeOriginal O nome do arquivo no cliente.
+     * @param contentType  O Content-Type informado pelo cliente (pode ser nulo).
+     * @return O arquivo temporário.
+     */
+    public ArquivoTemporario temporarioExistente(Path caminho, String hash, long tamanho, String nomeOriginal, String contentType) {
+        return new ArquivoTemporario(caminho, hash, extrairExtensao(nomeOriginal), tamanho, nomeOriginal, contentType,
+                metadadosMidiaService.extrair(caminho, nomeOriginal, tamanho));
+    }
+
+    /**
+     * Caminho do arquivo parcial de um upload em pedaços, na pasta temporária (mesmo sistema de arquivos
+     * do destino, então finalizar é só um rename).
+     *
+     * @param sessaoId O ID da sessão de upload.
+     * @return O caminho do arquivo parcial.
+     * @throws IOException Se não conseguir criar a pasta temporária.
+     */
+    public Path caminhoParcial(String sessaoId) throws IOException {
+        Path pastaTemporaria = getDiretorioUpload().resolve(PASTA_TEMPORARIA);
+        Files.createDirectories(pastaTemporaria);
+        return pastaTemporaria.resolve(sessaoId + ".upload");
+    }
+
+    /**
+     * Reserva um caminho novo na pasta temporária do armazenamento (o arquivo em si não é criado).
+     *
+     * @return O caminho pra gravar o arquivo temporário.
+     * @throws IOException Se não conseguir criar a pasta temporária.
+     */
+    public Path criarArquivoTemporario() throws IOException {
+        Path pastaTemporaria = getDiretorioUpload().resolve(PASTA_TEMPORARIA);
+        Files.createDirectories(pastaTemporaria);
+        return pastaTemporaria.resolve(UUID.randomUUID() + ".part");
+    }
+
+    /**
+     * Descarta um arquivo temporário que não vai mais ser usado (ex: falha antes de confirmar).
+     *
+     * @param temporario O arquivo temporário.
+     */
+    public void descartar(ArquivoTemporario temporario) {
+        try {
+            Files.deleteIfExists(temporario.getCaminho());
+        } catch (IOException e) {
+            logger.warn("Não foi possível apagar o temporário {}: {}", temporario.getCaminho(), e.getMessage());
+        }
+    }
+
+    /**
+     * Solta a referência de uma mídia ao seu arquivo.
+     * Quando a última referência some, os arquivos (original e variantes) entram na fila de remoção
+     * na mesma transação; o disco só é mexido depois do commit, pelo {@link RemocaoArquivoService}.
+     * Mídias antigas, gravadas antes do armazenamento por hash, têm o arquivo agendado direto.
+     * O nome público da mídia deixa de ser servido depois do commit.
+     *
+     * @param midia A mídia que está sendo removida.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void liberarReferencia(MidiaEntrada midia) {
+        eventPublisher.publishEvent(new MidiaRemovidaEvent(midia.getNomePublico()));
+        if (midia.getHashConteudo() == null) {
+            String caminhoGravado = midia.getCaminhoArquivo();
+            remocaoArquivoPendenteRepository.save(RemocaoArquivoPendente.doCaminho(caminhoGravado));
+            // Se a migração pra pastas já moveu o arquivo mas ainda não atualizou a linha, ele está no lugar novo
+            String nome = nomeDoCaminho(caminhoGravado);
+            if (nomeValido(nome)) {
+                remocaoArquivoPendenteRepository.save(RemocaoArquivoPendente.doArmazenamento(nome));
+            }
+            eventPublisher.publishEvent(new RemocaoArquivoAgendadaEvent());
+            return;
+        }
+
+        ArquivoMidia arquivo = arquivoMidiaRepository.findByHashParaAtualizacao(midia.getHashConteudo()).orElse(null);
+        if (arquivo == null) {
+            logger.warn("Mídia {} aponta pra um conteúdo sem registro: {}", midia.getId(), midia.getHashConteudo());
+            return;
+        }
+
+        arquivo.setReferencias(arquivo.getReferencias() - 1);
+        if (arquivo.getReferencias() <= 0) {
+            // Última referência: vão embora o original e as variantes geradas dele
+            for (VarianteMidia variante : varianteMidiaRepository.findByHashConteudo(arquivo.getHashConteudo())) {
+                varianteMidiaRepository.delete(variante);
+                remocaoArquivoPendenteRepository.save(RemocaoArquivoPendente.doArmazenamento(variante.getNomeArquivo()));
+            }
+            arquivoMidiaRepository.delete(arquivo);
+            remocaoArquivoPendenteRepository.save(RemocaoArquivoPendente.doArmazenamento(arquivo.getNomeArquivo()));
+            eventPublisher.publishEvent(new RemocaoArquivoAgendadaEvent());
+        }
+    }
+
+    /**
+     * Monta o caminho no disco de um arquivo guardado pelo nome.
+     * Os arquivos ficam em duas camadas de subpastas tiradas do começo do nome (ex: ab/cd/abcd...jpg),
+     * pra nenhuma pasta acumular centenas de milhares de arquivos.
+     *
+     * @param nomeArquivo O nome do arquivo (sem pastas).
+     * @return O caminho absoluto do arquivo dentro da pasta de upload.
+     * @throws IllegalArgumentException se o nome tiver separador de pasta ou tentar sair da pasta de upload.
+     */
+    public Path resolverCaminho(String nomeArquivo) {
+        validarNome(nomeArquivo);
+        String prefixo = prefixoPasta(nomeArquivo);
+        return getDiretorioUpload()
+                .resolve(prefixo.substring(0, 2))
+                .resolve(prefixo.substring(2, 4))
+                .resolve(nomeArquivo);
+    }
+
+    /**
+     * Caminho do arquivo no layout antigo, tudo solto na raiz da pasta de upload.
+     * Só serve pra achar arquivos que a migração ainda não moveu.
+     *
+     * @param nomeArquivo O nome do arquivo (sem pastas).
+     * @return O caminho absoluto na raiz da pasta de upload.
+     */
+    public Path resolverCaminhoLegado(String nomeArquivo) {
+        validarNome(nomeArquivo);
+        return getDiretorioUpload().resolve(nomeArquivo);
+    }
+
+    /**
+     * Igual a {@link #resolverCaminho(String)}, mas já cria as subpastas pra gravar o arquivo.
+     *
+     * @param nomeArquivo O nome do arquivo (sem pastas).
+     * @return O caminho absoluto do arquivo dentro da pasta de upload.
+     * @throws IOException Se não conseguir criar as subpastas.
+     */
+    public Path prepararCaminho(String nomeArquivo) throws IOException {
+        Path caminho = resolverCaminho(nomeArquivo);
+        Files.createDirectories(caminho.getParent());
+        return caminho;
+    }
+
+    /**
+     * Acha um arquivo pelo nome, primeiro no layout em subpastas e depois na raiz (arquivos ainda não migrados).
+     * Os atributos lidos já servem pra quem chamou montar ETag e tamanho sem outra ida ao disco.
+     *
+     * @param nomeArquivo O nome do arquivo (sem pastas).
+     * @return O arquivo encontrado, ou vazio se o nome for inválido ou o arquivo não existir.
+     */
+    public Optional<ArquivoLocalizado> localizar(String nomeArquivo) {
+        if (!nomeValido(nomeArquivo)) {
+            return Optional.empty();
+        }
+        for (Path candidato : List.of(resolverCaminho(nomeArquivo), resolverCaminhoLegado(nomeArquivo))) {
+            try {
+                BasicFileAttributes atributos = Files.readAttributes(candidato, BasicFileAttributes.class);
+                if (atributos.isRegularFile()) {
+                    return Optional.of(new ArquivoLocalizado(candidato, atributos));
+                }
+            } catch (NoSuchFileException e) {
+                // Tenta o próximo
+            } catch (IOException e) {
+                logger.warn("Erro ao ler atributos de {}: {}", candidato, e.getMessage());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Path getDiretorioUpload() {
+        return Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Nome de arquivo aceito pelo armazenamento: sem pastas, sem "..", sem começar com ponto.
+     *
+     * @param nomeArquivo O nome a conferir.
+     * @return true se o nome pode ser usado.
+     */
+    public static boolean nomeValido(String nomeArquivo) {
+        return nomeArquivo != null
+                && !nomeArquivo.isEmpty()
+                && !nomeArquivo.startsWith(".")
+                && nomeArquivo.indexOf('/') < 0
+                && nomeArquivo.indexOf('\\') < 0;
+    }
+
+    /**
+     * Nome do arquivo no fim de um caminho gravado. O caminho pode ter vindo de Windows (D:/...\\...),
+     * então é o que vem depois da última barra de qualquer tipo.
+     *
+     * @param caminhoGravado O caminho como está em midia_entrada.caminho_arquivo.
+     * @return O nome do arquivo.
+     */
+    public static String nomeDoCaminho(String caminhoGravado) {
+        return caminhoGravado.substring(Math.max(caminhoGravado.lastIndexOf('/'), caminhoGravado.lastIndexOf('\\')) + 1);
+    }
+
+    private static void validarNome(String nomeArquivo) {
+        if (!nomeValido(nomeArquivo)) {
+            throw new IllegalArgumentException("Nome de arquivo inválido: " + nomeArquivo);
+        }
+    }
+
+    /**
+     * Quatro caracteres hexa que definem as subpastas. Nomes por hash e por UUID já começam com hexa
+     * bem distribuído; pra qualquer outro nome usa o SHA-256 do próprio nome.
+     */
+    private static String prefixoPasta(String nomeArquivo) {
+        String inicio = nomeArquivo.length() >= 4 ? nomeArquivo.substring(0, 4).toLowerCase() : "";
+        if (inicio.matches("[0-9a-f]{4}")) {
+            return inicio;
+        }
+        byte[] hashNome = novoDigest().digest(nomeArquivo.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hashNome, 0, 2);
+    }
+
+    /**
+     * Apaga o arquivo pelo nome nos dois layouts (subpastas e raiz). Quem chama confere antes
+     * que o nome não está mais em uso.
+     *
+     * @param nomeArquivo O nome do arquivo (sem pastas).
+     * @throws IOException Se ocorrer um erro ao apagar o arquivo.
+     */
+    public void apagarArquivo(String nomeArquivo) throws IOException {
+        if (nomeValido(nomeArquivo)) {
+            Files.deleteIfExists(resolverCaminho(nomeArquivo));
+            Files.deleteIfExists(resolverCaminhoLegado(nomeArquivo));
+        }
+    }
+
+    private static String extrairExtensao(String originalFileName) {
+        if (originalFileName != null && originalFileName.contains(".")) {
+            String extensao = originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase();
+            // Só aceita extensões simples pra não levar lixo do nome original pro disco
+            if (extensao.matches("\\.[a-z0-9]{1,10}")) {
+                return extensao;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Novo MessageDigest do algoritmo usado pra identificar o conteúdo (SHA-256).
+     *
+     * @return O MessageDigest.
+     */
+    public static MessageDigest novoDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 não disponível na JVM", e);
+        }
+    }
+
+    /**
+     * Arquivo encontrado no disco, com os atributos lidos na busca.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ArquivoLocalizado {
+        private final Path caminho;
+        private final BasicFileAttributes atributos;
+    }
+
+    /**
+     * Arquivo já gravado no disco com o hash calculado, esperando a confirmação no banco.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ArquivoTemporario {
+        private final Path caminho;
+        private final String hash;
+        private final String extensao;
+        private final long tamanho;
+        private final String nomeOriginal;
+        private final String contentType; // Como veio na requisição, pode ser nulo
+        private final MetadadosMidiaService.Metadados metadados; // Lidos do arquivo, esses é que ficam gravados
+    }
+}
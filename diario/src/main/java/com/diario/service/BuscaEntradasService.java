@@ -0,0 +1,374 @@
+package com.diario.service;
+
+import com.diario.dto.ResultadoBuscaDTO;
+import com.diario.repository.EntradaDiarioRepository;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.NullFragmenter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Busca por texto (título e conteúdo) nas entradas de cada usuário, num índice invertido do Lucene em memória.
+ *
+ * O índice é montado do banco no start, lendo a tabela em fluxo, e depois acompanha as gravações
+ * pelo {@link EntradaAlteradaEvent}, depois do commit. Os termos ficam em minúsculas e sem acento
+ * ("coração" acha "coracao" e vice-versa), cada palavra da busca também vale como prefixo
+ * ("viag" acha "viagem"), e o título pesa mais que o conteúdo na relevância (BM25).
+ * O índice só guarda o ID: o texto dos resultados, pro trecho destacado, vem do banco numa consulta só.
+ */
+@Service
+public class BuscaEntradasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BuscaEntradasService.class);
+
+    private static final String CAMPO_ID = "id";
+    private static final String CAMPO_USUARIO = "usuario";
+    private static final String CAMPO_TITULO = "titulo";
+    private static final String CAMPO_CONTEUDO = "conteudo";
+
+    private static final float PESO_TITULO = 2.0f;
+    private static final float PESO_PREFIXO = 0.5f; // A palavra inteira vale mais que só o começo
+    private static final int TAMANHO_MINIMO_PREFIXO = 2; // Uma letra só como prefixo casaria com quase tudo
+    private static final int MAXIMO_TERMOS = 16;
+
+    @Autowired
+    private EntradaDiarioRepository entradaDiarioRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${busca.resultados.padrao:20}")
+    private int resultadosPadrao;
+
+    @Value("${busca.resultados.maximo:50}")
+    private int resultadosMaximo;
+
+    @Value("${busca.trecho.tamanho:160}")
+    private int tamanhoTrecho;
+
+    private final Analyzer analisador = new AnalisadorPortugues();
+
+    private IndexWriter escritor;
+    private SearcherManager buscadores;
+
+    private volatile boolean pronto;
+    private volatile boolean reconstruindo;
+
+    // Tem gravação que a busca ainda não vê: reabre o leitor na próxima busca, não a cada gravação
+    // (uma importação de milhares de entradas faria milhares de reaberturas)
+    private volatile boolean desatualizado;
+
+    // Entradas gravadas enquanto a reconstrução lia o banco: relidas no fim, pra não ficar a versão velha
+    private final Set<Long> alteradasDuranteReconstrucao = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void abrirIndice() throws IOException {
+        escritor = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(analisador));
+        buscadores = new SearcherManager(escritor, null);
+    }
+
+    @PreDestroy
+    void fecharIndice() throws IOException {
+        buscadores.close();
+        escritor.close();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarEmSegundoPlano() {
+        Thread thread = new Thread(() -> {
+            try {
+                reconstruir();
+            } catch (Exception e) {
+                logger.error("Não foi possível montar o índice de busca: {}", e.getMessage(), e);
+            }
+        }, "indice-busca");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Monta o índice do zero a partir do banco. As linhas vêm em fluxo (sem carregar a tabela inteira
+     * nem entidades na memória), e a busca só fica disponível quando termina.
+     */
+    public void reconstruir() throws IOException {
+        long inicio = System.currentTimeMillis();
+        reconstruindo = true;
+        alteradasDuranteReconstrucao.clear();
+        long indexadas;
+        try {
+            escritor.deleteAll();
+            indexadas = transactionTemplate.execute(status -> {
+                try (Stream<Object[]> linhas = entradaDiarioRepository.streamTextosParaIndice()) {
+                    long total = 0;
+                    for (Object[] linha : (Iterable<Object[]>) linhas::iterator) {
+                        indexar((Long) linha[0], (Long) linha[1], (String) linha[2], (String) linha[3]);
+                        total++;
+                    }
+                    return total;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            reconstruindo = false;
+        }
+
+        // Quem mudou durante a leitura pode ter entrado com o texto antigo: relê do banco, já com o texto final
+        for (Long id : alteradasDuranteReconstrucao) {
+            sincronizar(id);
+        }
+        alteradasDuranteReconstrucao.clear();
+
+        buscadores.maybeRefresh();
+        pronto = true;
+        logger.info("Índice de busca montado com {} entradas em {} ms", indexadas, System.currentTimeMillis() - inicio);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void aoAlterarEntrada(EntradaAlteradaEvent evento) {
+        if (reconstruindo) {
+            alteradasDuranteReconstrucao.add(evento.getEntradaId());
+        }
+        try {
+            if (evento.isRemovida()) {
+                escritor.deleteDocuments(new Term(CAMPO_ID, evento.getEntradaId().toString()));
+            } else {
+                indexar(evento.getEntradaId(), evento.getUsuarioId(), evento.getTitulo(), evento.getConteudo());
+            }
+            desatualizado = true;
+        } catch (IOException e) {
+            // O índice é só memória; se falhar aqui, a entrada volta a ficar certa no próximo start
+            logger.warn("Não foi possível atualizar a entrada {} no índice de busca: {}", evento.getEntradaId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Busca nas entradas de um usuário. Todas as palavras têm que aparecer (inteiras ou como começo
+     * de palavra) no título ou no conteúdo; os resultados vêm do mais relevante pro menos.
+     *
+     * @param usuarioId O ID do dono das entradas.
+     * @param texto     O que o usuário digitou.
+     * @param limite    Quantos resultados no máximo (nulo usa o padrão; limitado ao máximo configurado).
+     * @return Os resultados, com o título e um trecho do conteúdo destacados em HTML.
+     * @throws IllegalArgumentException se o texto não tiver nenhuma palavra.
+     * @throws IllegalStateException se o índice ainda está sendo montado.
+     */
+    public List<ResultadoBuscaDTO> buscar(Long usuarioId, String texto, Integer limite) {
+        if (!pronto) {
+            throw new IllegalStateException("Índice de busca ainda está sendo montado");
+        }
+        List<String> termos = analisar(texto);
+        if (termos.isEmpty()) {
+            throw new IllegalArgumentException("A busca precisa de pelo menos uma palavra");
+        }
+        int quantidade = limite == null ? resultadosPadrao : Math.max(1, Math.min(limite, resultadosMaximo));
+
+        Query consultaTexto = montarConsulta(termos);
+        Query consulta = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(CAMPO_USUARIO, usuarioId.toString())), BooleanClause.Occur.FILTER)
+                .add(consultaTexto, BooleanClause.Occur.MUST)
+                .build();
+
+        Map<Long, Float> relevancias = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        try {
+            if (desatualizado) {
+                desatualizado = false;
+                buscadores.maybeRefreshBlocking();
+            }
+            IndexSearcher buscador = buscadores.acquire();
+            try {
+                TopDocs melhores = buscador.search(consulta, quantidade);
+                for (ScoreDoc achado : melhores.scoreDocs) {
+                    Long id = Long.valueOf(buscador.storedFields().document(achado.doc).get(CAMPO_ID));
+                    ids.add(id);
+                    relevancias.put(id, achado.score);
+                }
+            } finally {
+                buscadores.release(buscador);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Object[]> textos = new HashMap<>();
+        for (Object[] linha : entradaDiarioRepository.findTextosPorIds(ids)) {
+            textos.put((Long) linha[0], linha);
+        }
+
+        List<ResultadoBuscaDTO> resultados = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Object[] linha = textos.get(id);
+            if (linha == null) {
+                continue; // Apagada depois da busca no índice
+            }
+            String titulo = (String) linha[2];
+            String conteudo = (String) linha[3];
+            resultados.add(new ResultadoBuscaDTO(id, (LocalDate) linha[1], titulo,
+                    destacarTitulo(consultaTexto, titulo), destacarTrecho(consultaTexto, conteudo), relevancias.get(id)));
+        }
+        return resultados;
+    }
+
+    private void indexar(Long id, Long usuarioId, String titulo, String conteudo) throws IOException {
+        Document documento = new Document();
+        documento.add(new StringField(CAMPO_ID, id.toString(), Field.Store.YES));
+        documento.add(new StringField(CAMPO_USUARIO, usuarioId.toString(), Field.Store.NO));
+        if (titulo != null) {
+            documento.add(new TextField(CAMPO_TITULO, titulo, Field.Store.NO));
+        }
+        if (conteudo != null) {
+            documento.add(new TextField(CAMPO_CONTEUDO, conteudo, Field.Store.NO));
+        }
+        escritor.updateDocument(new Term(CAMPO_ID, id.toString()), documento);
+    }
+
+    private void sincronizar(Long id) throws IOException {
+        List<Object[]> linhas = entradaDiarioRepository.findTextoParaIndice(id);
+        if (linhas.isEmpty()) {
+            escritor.deleteDocuments(new Term(CAMPO_ID, id.toString()));
+        } else {
+            Object[] linha = linhas.get(0);
+            indexar((Long) linha[0], (Long) linha[1], (String) linha[2], (String) linha[3]);
+        }
+    }
+
+    // Passa o texto da busca pelo mesmo analisador do índice: minúsculas, sem acento, sem pontuação
+    private List<String> analisar(String texto) {
+        Set<String> termos = new LinkedHashSet<>();
+        try (TokenStream fluxo = analisador.tokenStream(CAMPO_CONTEUDO, texto == null ? "" : texto)) {
+            CharTermAttribute termo = fluxo.addAttribute(CharTermAttribute.class);
+            fluxo.reset();
+            while (fluxo.incrementToken() && termos.size() < MAXIMO_TERMOS) {
+                termos.add(termo.toString());
+            }
+            fluxo.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ArrayList<>(termos);
+    }
+
+    private Query montarConsulta(List<String> termos) {
+        BooleanQuery.Builder consulta = new BooleanQuery.Builder();
+        for (String termo : termos) {
+            BooleanQuery.Builder alternativas = new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(new Term(CAMPO_TITULO, termo)), PESO_TITULO), BooleanClause.Occur.SHOULD)
+                    .add(new TermQuery(new Term(CAMPO_CONTEUDO, termo)), BooleanClause.Occur.SHOULD);
+            if (termo.length() >= TAMANHO_MINIMO_PREFIXO) {
+                alternativas
+                        .add(new BoostQuery(new PrefixQuery(new Term(CAMPO_TITULO, termo)), PESO_TITULO * PESO_PREFIXO), BooleanClause.Occur.SHOULD)
+                        .add(new BoostQuery(new PrefixQuery(new Term(CAMPO_CONTEUDO, termo)), PESO_PREFIXO), BooleanClause.Occur.SHOULD);
+            }
+            consulta.add(alternativas.build(), BooleanClause.Occur.MUST);
+        }
+        return consulta.build();
+    }
+
+    private String destacarTitulo(Query consulta, String titulo) {
+        if (titulo == null) {
+            return null;
+        }
+        Highlighter destacador = new Highlighter(new SimpleHTMLFormatter("<mark>", "</mark>"), new SimpleHTMLEncoder(),
+                new QueryScorer(consulta, CAMPO_TITULO));
+        destacador.setTextFragmenter(new NullFragmenter()); // O título vai inteiro
+        String destacado = destacar(destacador, CAMPO_TITULO, titulo);
+        return destacado != null ? destacado : SimpleHTMLEncoder.htmlEncode(titulo);
+    }
+
+    private String destacarTrecho(Query consulta, String conteudo) {
+        if (conteudo == null) {
+            return null;
+        }
+        QueryScorer pontuador = new QueryScorer(consulta, CAMPO_CONTEUDO);
+        Highlighter destacador = new Highlighter(new SimpleHTMLFormatter("<mark>", "</mark>"), new SimpleHTMLEncoder(), pontuador);
+        destacador.setTextFragmenter(new SimpleSpanFragmenter(pontuador, tamanhoTrecho));
+        String destacado = destacar(destacador, CAMPO_CONTEUDO, conteudo);
+        if (destacado != null) {
+            return destacado;
+        }
+        // Achou só no título: mostra o começo do conteúdo
+        return SimpleHTMLEncoder.htmlEncode(conteudo.length() <= tamanhoTrecho ? conteudo : conteudo.substring(0, tamanhoTrecho) + "…");
+    }
+
+    private String destacar(Highlighter destacador, String campo, String texto) {
+        try {
+            return destacador.getBestFragment(analisador, campo, texto);
+        } catch (IOException | InvalidTokenOffsetsException e) {
+            logger.debug("Não foi possível destacar o trecho: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Quebra nas palavras (regras do Unicode), passa pra minúsculas e tira os acentos.
+     * Sem radicalização: ela atrapalharia a busca por prefixo ("casamento" viraria "casament").
+     */
+    static class AnalisadorPortugues extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String campo) {
+            StandardTokenizer origem = new StandardTokenizer();
+            TokenStream fluxo = new ASCIIFoldingFilter(new LowerCaseFilter(origem));
+            return new TokenStreamComponents(origem, fluxo);
+        }
+
+        @Override
+        protected TokenStream normalize(String campo, TokenStream entrada) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(entrada));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.diario.service;
+
+import com.diario.dto.EntradaDiarioResponseDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Cache das leituras de entradas: cada entrada por ID e as páginas da listagem de cada usuário,
+ * já como DTO (entidades gerenciadas não podem ser compartilhadas entre sessões).
+ *
+ * O CacheManager é o do Spring (spring.cache.type): Caffeine na própria JVM por padrão, com limite
+ * de tamanho e estatísticas em /actuator/metrics (cache.gets com result=hit/miss); dá pra trocar por
+ * um cache compartilhado entre instâncias (ex: redis) só mudando a configuração, e nos testes por simple.
+ *
+ * Tudo fica guardado junto com a versão do diário do dono ({@link VersaoDiarioService}), a mesma do ETag:
+ * depois de uma gravação a versão muda e o que estava guardado deixa de servir, então o cache nunca
+ * entrega conteúdo mais velho que o ETag. As páginas antigas saem pelo limite de tamanho; a entrada
+ * alterada também é tirada na hora, depois do commit.
+ */
+@Service
+public class CacheEntradasService {
+
+    public static final String CACHE_ENTRADAS = "entradas";
+    public static final String CACHE_LISTAGENS = "listagens-entradas";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Cache entradas;
+    private Cache listagens;
+
+    @PostConstruct
+    void abrirCaches() {
+        entradas = new TransactionAwareCacheDecorator(obter(CACHE_ENTRADAS));
+        listagens = new TransactionAwareCacheDecorator(obter(CACHE_LISTAGENS));
+    }
+
+    /**
+     * Entrada pelo ID, do cache ou carregada (e guardada) se não estiver lá nessa versão.
+     *
+     * @param id       O ID da entrada.
+     * @param versao   A versão atual do diário do dono.
+     * @param carregar Como montar o DTO quando não está no cache.
+     * @return O DTO, ou vazio se a entrada não existe (não fica no cache).
+     */
+    public Optional<EntradaDiarioResponseDTO> entrada(Long id, long versao, Supplier<Optional<EntradaDiarioResponseDTO>> carregar) {
+        EntradaEmCache emCache = entradas.get(id, EntradaEmCache.class);
+        if (emCache != null && emCache.getVersao() == versao) {
+            return Optional.of(emCache.getEntrada());
+        }
+        Optional<EntradaDiarioResponseDTO> carregada = carregar.get();
+        carregada.ifPresent(dto -> entradas.put(id, new EntradaEmCache(versao, dto)));
+        return carregada;
+    }
+
+    /**
+     * Página da listagem de um usuário, do cache ou carregada (e guardada) se não estiver lá nessa versão.
+     *
+     * @param usuarioId O dono das entradas.
+     * @param versao    A versão atual do diário dele.
+     * @param pagina    O que distingue a página (formato, cursor, limite).
+     * @param tipo      O tipo do DTO da página.
+     * @param carregar  Como montar a página quando não está no cache.
+     * @return A página.
+     */
+    public <T> T listagem(Long usuarioId, long versao, String pagina, Class<T> tipo, Supplier<T> carregar) {
+        String chave = usuarioId + ":" + versao + ":" + pagina;
+        T emCache = listagens.get(chave, tipo);
+        if (emCache != null) {
+            return emCache;
+        }
+        T carregada = carregar.get();
+        listagens.put(chave, carregada);
+        return carregada;
+    }
+
+    /**
+     * Tira uma entrada do cache (mudou, ganhou ou perdeu mídia, ou sumiu). As páginas do dono
+     * não precisam sair: a gravação muda a versão do diário, que faz parte da chave delas.
+     *
+     * @param entradaId O ID da entrada.
+     */
+    public void invalidarEntrada(Long entradaId) {
+        entradas.evict(entradaId);
+    }
+
+    private Cache obter(String nome) {
+        return Objects.requireNonNull(cacheManager.getCache(nome), "Cache não configurado: " + nome);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class EntradaEmCache implements Serializable {
+        private final long versao;
+        private final EntradaDiarioResponseDTO entrada;
+    }
+}
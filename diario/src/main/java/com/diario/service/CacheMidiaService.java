@@ -0,0 +1,241 @@
+package com.diario.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Cache em memória dos arquivos de mídia pequenos (avatares, miniaturas, ícones), pra maior parte
+ * das requisições do getArquivo não ir no disco nem no banco.
+ *
+ * O Caffeine decide quem fica (W-TinyLFU, limitado pelo total de bytes), e os bytes ficam em
+ * ByteBuffer direto, fora do heap, então o cache não pesa no GC. Os arquivos do armazenamento nunca
+ * mudam de conteúdo (o nome é o hash ou um UUID), então a única invalidação é quando o arquivo é apagado.
+ * Acertos, faltas e despejos saem nas métricas "cache.*" com cache=midia-quente.
+ */
+@Service
+public class CacheMidiaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheMidiaService.class);
+
+    private static final String NOME_CACHE = "midia-quente";
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${midia.cache.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${midia.cache.tamanho-maximo-bytes:67108864}")
+    private long capacidadeBytes;
+
+    // Só arquivos até esse tamanho entram; os maiores continuam indo direto do disco
+    @Value("${midia.cache.arquivo-maximo-bytes:262144}")
+    private long tamanhoMaximoArquivo;
+
+    private Cache<String, ArquivoEmCache> cache;
+
+    @PostConstruct
+    void iniciarCache() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(capacidadeBytes)
+                .weigher((String nome, ArquivoEmCache arquivo) -> arquivo.getConteudo().capacity())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NOME_CACHE);
+        Gauge.builder("midia.cache.bytes", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Bytes fora do heap ocupados pelo cache de mídias")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Procura o arquivo no cache, sem ir ao disco.
+     *
+     * @param nomeArquivo O nome do arquivo no armazenamento.
+     * @return O arquivo em cache, ou vazio.
+     */
+    public Optional<ArquivoEmCache> buscar(String nomeArquivo) {
+        return habilitado ? Optional.ofNullable(cache.getIfPresent(nomeArquivo)) : Optional.empty();
+    }
+
+    /**
+     * Diz se um arquivo desse tamanho entra no cache.
+     *
+     * @param tamanho O tamanho em bytes.
+     * @return true se cabe no limite por arquivo.
+     */
+    public boolean aceita(long tamanho) {
+        return habilitado && tamanho <= tamanhoMaximoArquivo;
+    }
+
+    /**
+     * Lê o arquivo do disco pro cache. A leitura roda dentro do cálculo da chave no Caffeine,
+     * então uma {@link #invalidar(String)} ao mesmo tempo espera ela acabar e não deixa sobrar
+     * no cache um arquivo que acabou de ser apagado.
+     *
+     * @param nomeArquivo O nome do arquivo no armazenamento.
+     * @param contentType O Content-Type a servir junto.
+     * @return O arquivo em cache, ou vazio se não existe mais ou é grande demais.
+     */
+    public Optional<ArquivoEmCache> carregar(String nomeArquivo, String contentType) {
+        if (!habilitado) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(cache.get(nomeArquivo, nome -> lerDoDisco(nome, contentType)));
+        } catch (UncheckedIOException e) {
+            logger.warn("Não foi possível carregar {} no cache: {}", nomeArquivo, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Tira o arquivo do cache (ex: foi apagado do disco).
+     *
+     * @param nomeArquivo O nome do arquivo no armazenamento.
+     */
+    public void invalidar(String nomeArquivo) {
+        cache.invalidate(nomeArquivo);
+    }
+
+    private ArquivoEmCache lerDoDisco(String nomeArquivo, String contentType) {
+        Optional<ArmazenamentoMidiaService.ArquivoLocalizado> localizado = armazenamentoMidiaService.localizar(nomeArquivo);
+        if (localizado.isEmpty() || !aceita(localizado.get().getAtributos().size())) {
+            return null;
+        }
+
+        long tamanho = localizado.get().getAtributos().size();
+        ByteBuffer conteudo = ByteBuffer.allocateDirect((int) tamanho);
+        try (FileChannel canal = FileChannel.open(localizado.get().getCaminho(), StandardOpenOption.READ)) {
+            while (conteudo.hasRemaining()) {
+                if (canal.read(conteudo) < 0) {
+                    throw new EOFException("Arquivo menor que o esperado: " + nomeArquivo);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        conteudo.flip();
+
+        return new ArquivoEmCache(nomeArquivo, conteudo.asReadOnlyBuffer(), contentType,
+                localizado.get().getAtributos().lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Arquivo guardado no cache, com o que a resposta precisa (Content-Type, data pra ETag/Last-Modified).
+     */
+    @Getter
+    public static class ArquivoEmCache {
+        private final String nomeArquivo;
+        private final ByteBuffer conteudo;
+        private final String contentType;
+        private final long ultimaModificacao;
+
+        ArquivoEmCache(String nomeArquivo, ByteBuffer conteudo, String contentType, long ultimaModificacao) {
+            this.nomeArquivo = nomeArquivo;
+            this.conteudo = conteudo;
+            this.contentType = contentType;
+            this.ultimaModificacao = ultimaModificacao;
+        }
+
+        public long getTamanho() {
+            return conteudo.capacity();
+        }
+
+        /**
+         * Resource lendo direto do buffer. Cada leitura usa uma cópia da posição do buffer,
+         * então várias requisições (e faixas de Range) leem o mesmo conteúdo ao mesmo tempo.
+         *
+         * @return O Resource pra corpo da resposta.
+         */
+        public Resource comoResource() {
+            return new AbstractResource() {
+                @Override
+                public String getDescription() {
+                    return "Mídia em cache [" + nomeArquivo + "]";
+                }
+
+                @Override
+                public String getFilename() {
+                    return nomeArquivo;
+                }
+
+                @Override
+                public long contentLength() {
+                    return conteudo.capacity();
+                }
+
+                @Override
+                public boolean exists() {
+                    return true;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new LeitorBuffer(conteudo.duplicate());
+                }
+            };
+        }
+    }
+
+    private static class LeitorBuffer extends InputStream {
+        private final ByteBuffer buffer;
+
+        LeitorBuffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] destino, int inicio, int tamanho) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int lidos = Math.min(tamanho, buffer.remaining());
+            buffer.get(destino, inicio, lidos);
+            return lidos;
+        }
+
+        // O Range pula até o começo da faixa sem copiar nada
+        @Override
+        public long skip(long n) {
+            int pulados = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + pulados);
+            return pulados;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.diario.service;
+
+import com.diario.dto.ContagemPeriodoDTO;
+import com.diario.model.ContagemDiaria;
+import com.diario.repository.ContagemDiariaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Contagens de entradas e mídias por dia, semana ou mês, pro calendário e o mapa de calor.
+ *
+ * Lê da tabela contagem_diaria, que o {@link EntradaDiarioService} mantém na mesma transação de cada
+ * gravação (somando ou subtraindo no dia da entrada). Um ano inteiro são no máximo 366 linhas
+ * lidas por um intervalo da chave (usuario_id, dia), sem tocar em entrada_diario. As contagens das
+ * entradas de antes da tabela são montadas pelo create_database.sql, antes de a aplicação servir o calendário.
+ */
+@Service
+public class CalendarioService {
+
+    @Autowired
+    private ContagemDiariaRepository contagemDiariaRepository;
+
+    @Value("${calendario.intervalo-maximo-dias:1830}")
+    private long intervaloMaximoDias;
+
+    /**
+     * Soma (ou subtrai, com valores negativos) nas contagens de um dia. Tem que rodar dentro
+     * da transação que grava a entrada, pra contagem e entrada voltarem juntas num rollback.
+     *
+     * @param usuarioId O dono da entrada.
+     * @param dia       A data da entrada (nula não conta).
+     * @param entradas  Quantas entradas somar.
+     * @param midias    Quantas mídias somar.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(Long usuarioId, LocalDate dia, int entradas, int midias) {
+        if (dia == null || (entradas == 0 && midias == 0)) {
+            return;
+        }
+        contagemDiariaRepository.somar(usuarioId, dia, entradas, midias);
+    }
+
+    /**
+     * Contagens de um intervalo agrupadas por período. Períodos sem nada não aparecem.
+     *
+     * @param usuarioId   O dono das entradas.
+     * @param de          Primeiro dia do intervalo.
+     * @param ate         Último dia do intervalo (inclusive).
+     * @param agrupamento "dia", "semana" (começando na segunda) ou "mes".
+     * @return As contagens de cada período, do mais antigo pro mais novo.
+     * @throws IllegalArgumentException se o intervalo ou o agrupamento forem inválidos.
+     */
+    @Transactional(readOnly = true)
+    public List<ContagemPeriodoDTO> agregar(Long usuarioId, LocalDate de, LocalDate ate, String agrupamento) {
+        if (ate.isBefore(de)) {
+            throw new IllegalArgumentException("O fim do intervalo vem antes do começo");
+        }
+        if (ChronoUnit.DAYS.between(de, ate) >= intervaloMaximoDias) {
+            throw new IllegalArgumentException("Intervalo maior que " + intervaloMaximoDias + " dias");
+        }
+        Agrupamento periodo = Agrupamento.de(agrupamento);
+
+        Map<LocalDate, ContagemPeriodoDTO> porPeriodo = new LinkedHashMap<>();
+        for (ContagemDiaria contagem : contagemDiariaRepository.findByUsuarioIdAndDiaBetweenOrderByDiaAsc(usuarioId, de, ate)) {
+            if (contagem.getEntradas() == 0 && contagem.getMidias() == 0) {
+                continue; // Dia que ficou vazio depois de apagar entradas
+            }
+            ContagemPeriodoDTO total = porPeriodo.computeIfAbsent(periodo.inicio(contagem.getDia()),
+                    inicio -> new ContagemPeriodoDTO(inicio, 0, 0));
+            total.setEntradas(total.getEntradas() + contagem.getEntradas());
+            total.setMidias(total.getMidias() + contagem.getMidias());
+        }
+        return new ArrayList<>(porPeriodo.values());
+    }
+
+    enum Agrupamento {
+        DIA, SEMANA, MES;
+
+        static Agrupamento de(String valor) {
+            if (valor == null || valor.isBlank()) {
+                return DIA;
+            }
+            try {
+                return valueOf(valor.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Agrupamento inválido: " + valor + " (use dia, semana ou mes)");
+            }
+        }
+
+        LocalDate inicio(LocalDate dia) {
+            return switch (this) {
+                case DIA -> dia;
+                case SEMANA -> dia.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MES -> dia.withDayOfMonth(1);
+            };
+        }
+    }
+}
@@ -1,19 +1,49 @@
 package com.diario.service;
 
 import com.diario.model.Usuario;
+import com.diario.model.UsuarioAutenticado;
 import com.diario.model.UsuarioDetails;
 import com.diario.repository.UsuarioRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
 @Service
 @RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
+    private static final String NOME_CACHE = "usuarios-autenticados";
+
     private final UsuarioRepository usuarioRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${auth.usuarios.cache.tamanho-maximo:10000}")
+    private long tamanhoMaximoCache;
+
+    @Value("${auth.usuarios.cache.expiracao-segundos:60}")
+    private long expiracaoCacheSegundos;
+
+    private Cache<String, UsuarioAutenticado> autenticados;
+
+    @PostConstruct
+    void iniciarCache() {
+        autenticados = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximoCache)
+                .expireAfterWrite(Duration.ofSeconds(expiracaoCacheSegundos))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, autenticados, NOME_CACHE);
+    }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -22,4 +52,20 @@ public class CustomUserDetailsService implements UserDetailsService {
 
         return new UsuarioDetails(usuario);
     }
+
+    /**
+     * Usuário conferido no banco, pros tokens que não dá pra aceitar só pelas claims (tokens antigos, sem o ID,
+     * ou quando auth.jwt.confiar-nas-claims está desligado). Fica num cache pequeno e curto: o estado do usuário
+     * é no máximo auth.usuarios.cache.expiracao-segundos mais velho que o banco, e usuário inexistente não é guardado.
+     *
+     * @param username O username do token.
+     * @return O ID e o username do usuário.
+     * @throws UsernameNotFoundException se o usuário não existe.
+     */
+    public UsuarioAutenticado carregarAutenticado(String username) throws UsernameNotFoundException {
+        return autenticados.get(username, nome -> {
+            UsuarioDetails detalhes = (UsuarioDetails) loadUserByUsername(nome);
+            return new UsuarioAutenticado(detalhes.getId(), detalhes.getUsername());
+        });
+    }
 }
@@ -0,0 +1,394 @@
+package com.diario.service;
+
+import com.diario.model.ArquivoMidia;
+import com.diario.model.VarianteMidia;
+import com.diario.repository.ArquivoMidiaRepository;
+import com.diario.repository.VarianteMidiaRepository;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gera em segundo plano as versões reduzidas das mídias: miniaturas de imagens
+ * e prévia da primeira página de PDFs. Roda depois do commit do upload, fora da requisição,
+ * e enquanto as variantes não ficam prontas o endpoint de arquivo entrega o original.
+ *
+ * Uma varredura periódica (midia.derivados.varredura-ms) enfileira de novo os arquivos em uso que ainda
+ * estão sem alguma variante: os descartados com a fila cheia e os que estavam na fila num restart.
+ */
+@Service
+public class DerivadosMidiaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DerivadosMidiaService.class);
+
+    public static final String MINIATURA = "miniatura";
+    public static final String MEDIA = "media";
+
+    // Toda variante é gravada em JPEG
+    public static final String CONTENT_TYPE_VARIANTE = "image/jpeg";
+
+    // Variante -> maior lado em pixels
+    private static final Map<String, Integer> VARIANTES = new LinkedHashMap<>();
+
+    static {
+        VARIANTES.put(MINIATURA, 320);
+        VARIANTES.put(MEDIA, 1024);
+    }
+
+    private static final Set<String> EXTENSOES_IMAGEM = Set.of("jpg", "jpeg", "png", "gif", "bmp");
+    private static final String EXTENSAO_PDF = "pdf";
+
+    // Acima disso nem tenta decodificar (bomba de descompressão)
+    private static final long MAXIMO_PIXELS = 100_000_000L;
+
+    private static final int DPI_PREVIA_PDF = 96;
+
+    private static final int LOTE_VARREDURA = 500;
+
+    @Autowired
+    private VarianteMidiaRepository varianteMidiaRepository;
+
+    @Autowired
+    private ArquivoMidiaRepository arquivoMidiaRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${midia.derivados.threads:1}")
+    private int threads;
+
+    @Value("${midia.derivados.fila:200}")
+    private int tamanhoFila;
+
+    private ThreadPoolExecutor executor;
+
+    // Hashes na fila ou sendo gerados, pra varredura não enfileirar de novo o que o upload já mandou
+    private final Set<String> pendentes = ConcurrentHashMap.newKeySet();
+
+    // Arquivos que não rendem variante (não decodifica, grande demais, sumiu do disco): a varredura não insiste até o restart
+    private final Set<String> semVariantes = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void iniciarExecutor() {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(tamanhoFila),
+                tarefa -> {
+                    Thread thread = new Thread(tarefa, "midia-derivados");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY); // Não compete com as requisições
+                    return thread;
+                },
+                // Fila cheia: quem agendou fica sabendo, e a varredura tenta de novo depois
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void encerrarExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Agenda a geração das variantes depois que a transação do upload fez commit,
+     * pra nunca processar um arquivo cujo registro acabou em rollback.
+     *
+     * @param evento O arquivo recém-confirmado.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void aoArmazenarMidia(MidiaArmazenadaEvent evento) {
+        if (suportaVariantes(evento.getNomeArquivo())) {
+            agendar(evento.getHashConteudo(), evento.getNomeArquivo());
+        }
+    }
+
+    /**
+     * Rede de segurança: enfileira os arquivos de imagem/PDF ainda em uso que estão sem alguma variante.
+     * Ocupa no máximo metade da fila, pra sobrar lugar pros uploads novos; o resto fica pra próxima rodada.
+     */
+    @Scheduled(initialDelayString = "${midia.derivados.atraso-inicial-ms:300000}",
+            fixedDelayString = "${midia.derivados.varredura-ms:3600000}")
+    public void varrerFaltando() {
+        String depois = "";
+        int agendados = 0;
+        try {
+            varredura:
+            while (executor.getQueue().remainingCapacity() > tamanhoFila / 2) {
+                List<Object[]> lote = arquivoMidiaRepository.findSemVariantesApos(depois, VARIANTES.size(),
+                        PageRequest.of(0, LOTE_VARREDURA));
+                if (lote.isEmpty()) {
+                    break;
+                }
+                for (Object[] linha : lote) {
+                    String hash = (String) linha[0];
+                    String nomeArquivo = (String) linha[1];
+                    depois = hash;
+                    if (!suportaVariantes(nomeArquivo) || semVariantes.contains(hash) || pendentes.contains(hash)) {
+                        continue;
+                    }
+                    if (!agendar(hash, nomeArquivo)) {
+                        break varredura;
+                    }
+                    agendados++;
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Varredura de variantes faltando interrompida: {}", e.getMessage(), e);
+        }
+        if (agendados > 0) {
+            logger.info("{} arquivos sem variantes enfileirados de novo", agendados);
+        }
+    }
+
+    // false se a fila está cheia (o arquivo fica pra próxima varredura)
+    private boolean agendar(String hash, String nomeArquivo) {
+        if (semVariantes.contains(hash) || !pendentes.add(hash)) {
+            return true; // Já na fila, ou não adianta tentar
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    gerarVariantes(hash, nomeArquivo);
+                } finally {
+                    pendentes.remove(hash);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendentes.remove(hash);
+            logger.warn("Fila de derivados cheia, {} fica pra próxima varredura", nomeArquivo);
+            return false;
+        }
+    }
+
+    /**
+     * Procura o arquivo de uma variante pronta.
+     *
+     * @param nomeArquivo O nome do arquivo original (<hash>.<extensão>).
+     * @param variante    O nome da variante (ex: "miniatura").
+     * @return O nome do arquivo da variante, ou vazio se ainda não existe.
+     */
+    public Optional<String> buscarVariante(String nomeArquivo, String variante) {
+        int ponto = nomeArquivo.indexOf('.');
+        String hash = ponto > 0 ? nomeArquivo.substring(0, ponto) : nomeArquivo;
+        if (!VARIANTES.containsKey(variante) || !hash.matches("[0-9a-f]{64}")) {
+            return Optional.empty(); // Variante desconhecida ou arquivo antigo, de antes do armazenamento por hash
+        }
+        return varianteMidiaRepository.findByHashConteudoAndVariante(hash, variante)
+                .map(VarianteMidia::getNomeArquivo);
+    }
+
+    /**
+     * Gera as variantes de um arquivo que ainda não existem. Cada variante é conferida sozinha, então
+     * uma que falhou numa tentativa anterior é refeita mesmo que a outra já esteja pronta.
+     *
+     * @param hash        O SHA-256 do conteúdo.
+     * @param nomeArquivo O nome do arquivo original no armazenamento.
+     */
+    public void gerarVariantes(String hash, String nomeArquivo) {
+        List<Map.Entry<String, Integer>> faltando = VARIANTES.entrySet().stream()
+                .filter(variante -> !varianteMidiaRepository.existsByHashConteudoAndVariante(hash, variante.getKey()))
+                .toList();
+        if (faltando.isEmpty()) {
+            return; // Conteúdo repetido, as variantes já foram feitas
+        }
+
+        Optional<ArmazenamentoMidiaService.ArquivoLocalizado> localizado = armazenamentoMidiaService.localizar(nomeArquivo);
+        if (localizado.isEmpty()) {
+            semVariantes.add(hash);
+            return; // Apagado antes de chegar a vez dele
+        }
+        Path original = localizado.get().getCaminho();
+
+        try {
+            int maiorVariante = faltando.stream().map(Map.Entry::getValue).max(Integer::compare).orElse(1024);
+            BufferedImage base = EXTENSAO_PDF.equals(extensao(nomeArquivo))
+                    ? renderizarPrimeiraPagina(original)
+                    : lerImagemReduzida(original, maiorVariante);
+            if (base == null) {
+                semVariantes.add(hash);
+                return;
+            }
+
+            for (Map.Entry<String, Integer> variante : faltando) {
+                if (!salvarVariante(hash, variante.getKey(), redimensionar(base, variante.getValue()))) {
+                    return; // A última referência ao original sumiu enquanto a imagem era gerada
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Não foi possível gerar as variantes de {}: {}", nomeArquivo, e.getMessage());
+        }
+    }
+
+    /**
+     * Grava a variante e registra em variante_midia com a linha do arquivo original travada, a mesma trava
+     * que a remoção da última referência usa. Assim ou a variante entra antes e a remoção apaga ela junto,
+     * ou a remoção vem antes e a variante nem é gravada; nunca sobra arquivo sem dono.
+     *
+     * @return false se o original não tem mais referências (variante descartada).
+     */
+    private boolean salvarVariante(String hash, String variante, BufferedImage imagem) throws IOException {
+        String nomeVariante = hash + "_" + variante + ".jpg";
+        Path temporario = armazenamentoMidiaService.criarArquivoTemporario();
+        try {
+            // A codificação fica fora da transação, que só segura a trava pelo tempo do rename e do INSERT
+            ImageIO.write(imagem, "jpg", temporario.toFile());
+            long tamanho = Files.size(temporario);
+
+            Boolean gravada = transactionTemplate.execute(status -> {
+                Optional<ArquivoMidia> arquivo = arquivoMidiaRepository.findByHashParaAtualizacao(hash);
+                if (arquivo.isEmpty() || arquivo.get().getReferencias() <= 0) {
+                    return false;
+                }
+                try {
+                    Files.move(temporario, armazenamentoMidiaService.prepararCaminho(nomeVariante));
+                } catch (FileAlreadyExistsException e) {
+                    // Sobra de uma tentativa que gravou o arquivo mas não o registro: fica o que já está lá
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                VarianteMidia registro = new VarianteMidia();
+                registro.setHashConteudo(hash);
+                registro.setVariante(variante);
+                registro.setNomeArquivo(nomeVariante);
+                registro.setLargura(imagem.getWidth());
+                registro.setAltura(imagem.getHeight());
+                registro.setTamanhoBytes(tamanho);
+                registro.setDataCriacao(LocalDateTime.now());
+                varianteMidiaRepository.save(registro);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(gravada)) {
+                logger.debug("Arquivo {} sem referências, variante {} descartada", hash, variante);
+                return false;
+            }
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Variante {} de {} já registrada", variante, hash);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Files.deleteIfExists(temporario);
+        }
+        return true;
+    }
+
+    /**
+     * Lê a imagem já pulando pixels (subsampling) quando ela é muito maior que a maior variante,
+     * pra não decodificar uma foto de 50 MP inteira só pra fazer uma miniatura.
+     */
+    private BufferedImage lerImagemReduzida(Path arquivo, int maiorLado) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(arquivo.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> leitores = ImageIO.getImageReaders(in);
+            if (!leitores.hasNext()) {
+                return null;
+            }
+
+            ImageReader leitor = leitores.next();
+            try {
+                leitor.setInput(in, true, true);
+                int largura = leitor.getWidth(0);
+                int altura = leitor.getHeight(0);
+                if ((long) largura * altura > MAXIMO_PIXELS) {
+                    logger.warn("Imagem {} grande demais pra gerar variantes ({}x{})", arquivo.getFileName(), largura, altura);
+                    return null;
+                }
+
+                ImageReadParam parametros = leitor.getDefaultReadParam();
+                int fator = Math.max(1, Math.max(largura, altura) / (maiorLado * 2));
+                parametros.setSourceSubsampling(fator, fator, 0, 0);
+                return leitor.read(0, parametros);
+            } finally {
+                leitor.dispose();
+            }
+        }
+    }
+
+    private BufferedImage renderizarPrimeiraPagina(Path arquivo) throws IOException {
+        // Buffers em arquivo temporário em vez de heap, PDF grande não estoura a memória
+        try (PDDocument documento = PDDocument.load(arquivo.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            if (documento.getNumberOfPages() == 0) {
+                return null;
+            }
+            return new PDFRenderer(documento).renderImageWithDPI(0, DPI_PREVIA_PDF, ImageType.RGB);
+        }
+    }
+
+    /**
+     * Reduz a imagem pro maior lado caber no limite (nunca aumenta) e tira a transparência,
+     * já que as variantes são JPEG.
+     */
+    private static BufferedImage redimensionar(BufferedImage origem, int maiorLado) {
+        double escala = Math.min(1.0, (double) maiorLado / Math.max(origem.getWidth(), origem.getHeight()));
+        int largura = Math.max(1, (int) Math.round(origem.getWidth() * escala));
+        int altura = Math.max(1, (int) Math.round(origem.getHeight() * escala));
+
+        BufferedImage destino = new BufferedImage(largura, altura, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = destino.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, largura, altura);
+            g.drawImage(origem, 0, 0, largura, altura, null);
+        } finally {
+            g.dispose();
+        }
+        return destino;
+    }
+
+    private static boolean suportaVariantes(String nomeArquivo) {
+        String extensao = extensao(nomeArquivo);
+        return EXTENSOES_IMAGEM.contains(extensao) || EXTENSAO_PDF.equals(extensao);
+    }
+
+    private static String extensao(String nomeArquivo) {
+        int ponto = nomeArquivo.lastIndexOf('.');
+        return ponto >= 0 ? nomeArquivo.substring(ponto + 1).toLowerCase() : "";
+    }
+}
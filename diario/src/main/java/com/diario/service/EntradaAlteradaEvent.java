@@ -0,0 +1,29 @@
+package com.diario.service;
+
+import com.diario.model.EntradaDiario;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Publicado quando uma entrada é criada, editada ou apagada, com o texto do jeito que ficou.
+ * Os ouvintes que rodam depois do commit (ex: índice de busca) se atualizam com isso, sem ir no banco.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class EntradaAlteradaEvent {
+    private final Long entradaId;
+    private final Long usuarioId;
+    private final String titulo;
+    private final String conteudo;
+    private final boolean removida;
+
+    public static EntradaAlteradaEvent gravada(EntradaDiario entrada) {
+        return new EntradaAlteradaEvent(entrada.getId(), entrada.getUsuario().getId(),
+                entrada.getTitulo(), entrada.getConteudo(), false);
+    }
+
+    public static EntradaAlteradaEvent removida(EntradaDiario entrada) {
+        return new EntradaAlteradaEvent(entrada.getId(), entrada.getUsuario().getId(), null, null, true);
+    }
+}
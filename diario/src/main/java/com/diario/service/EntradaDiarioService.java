@@ -1,29 +1,44 @@
 package com.diario.service;
 
+import com.diario.dto.EntradaResumoDTO;
+import com.diario.dto.PaginaResumosDTO;
+import com.diario.model.ArquivoMidia;
 import com.diario.model.EntradaDiario;
+import com.diario.model.ExclusaoDiario;
 import com.diario.model.MidiaEntrada;
-import com.diario.model.Usuario;
 import com.diario.repository.EntradaDiarioRepository;
+import com.diario.repository.ExclusaoDiarioRepository;
 import com.diario.repository.MidiaEntradaRepository;
 import com.diario.repository.UsuarioRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 public class EntradaDiarioService {
 
+    private static final Logger logger = LoggerFactory.getLogger(EntradaDiarioService.class);
+
     @Autowired
     private EntradaDiarioRepository entradaDiarioRepository;
 
@@ -33,16 +48,132 @@ public class EntradaDiarioService {
     @Autowired
     private MidiaEntradaRepository midiaEntradaRepository;
 
-    @Value("${file.upload-dir}")
-    private String uploadDir;
+    @Autowired
+    private ExclusaoDiarioRepository exclusaoDiarioRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private CalendarioService calendarioService;
+
+    @Autowired
+    private VersaoDiarioService versaoDiarioService;
+
+    @Autowired
+    private CacheEntradasService cacheEntradasService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${entradas.pagina.tamanho-padrao:20}")
+    private int tamanhoPaginaPadrao;
+
+    @Value("${entradas.pagina.tamanho-maximo:100}")
+    private int tamanhoPaginaMaximo;
 
     /**
-     * Lista todas as entradas do diário associadas a um usuário específico.
+     * Lista uma página das entradas de um usuário, das mais novas pras mais antigas, ordenadas por (data, id).
+     * A paginação é por cursor (keyset): a próxima página começa logo depois da última entrada desta,
+     * então o custo não cresce com o tamanho do diário nem com a profundidade da página.
+     * São sempre duas consultas: as entradas (com o dono) e as mídias de todas elas num IN só.
+     *
      * @param usuarioId O ID do usuário cujas entradas devem ser listadas.
-     * @return Uma lista de objetos EntradaDiario.
+     * @param cursor    O cursor devolvido pela página anterior, ou nulo pra primeira página.
+     * @param limite    Quantas entradas por página (nulo usa o padrão; limitado ao máximo configurado).
+     * @return A página, com as mídias de cada entrada e o cursor da próxima (nulo se esta é a última).
+     * @throws IllegalArgumentException se o cursor for inválido.
      */
-    public List<EntradaDiario> listarEntradasPorUsuario(Long usuarioId) {
-        return entradaDiarioRepository.findByUsuarioId(usuarioId);
+    @Transactional(readOnly = true)
+    public PaginaEntradas listarEntradasPorUsuario(Long usuarioId, String cursor, Integer limite) {
+        int tamanho = tamanhoPagina(limite);
+        // Um a mais só pra saber se existe próxima página
+        PageRequest pagina = PageRequest.of(0, tamanho + 1);
+
+        List<EntradaDiario> entradas;
+        if (cursor == null || cursor.isBlank()) {
+            entradas = entradaDiarioRepository.findPrimeiraPagina(usuarioId, pagina);
+        } else {
+            CursorEntrada posicao = CursorEntrada.decodificar(cursor);
+            entradas = entradaDiarioRepository.findPaginaApos(usuarioId, posicao.getData(), posicao.getId(), pagina);
+        }
+
+        String proximoCursor = null;
+        if (entradas.size() > tamanho) {
+            entradas = entradas.subList(0, tamanho);
+            EntradaDiario ultima = entradas.get(tamanho - 1);
+            proximoCursor = new CursorEntrada(ultima.getData(), ultima.getId()).codificar();
+        }
+        return new PaginaEntradas(entradas, buscarMidiasPorEntrada(entradas), proximoCursor);
+    }
+
+    /**
+     * Mesma listagem de {@link #listarEntradasPorUsuario}, na versão resumida pra linha do tempo:
+     * título, o resumo gravado na escrita e as quantidades de mídia, sem ler o conteúdo nem carregar
+     * entidades. São três consultas pequenas: as entradas, as contagens por tipo e a primeira imagem de cada uma.
+     *
+     * @param usuarioId O ID do usuário cujas entradas devem ser listadas.
+     * @param cursor    O cursor devolvido pela página anterior (de qualquer das duas versões), ou nulo.
+     * @param limite    Quantas entradas por página (nulo usa o padrão; limitado ao máximo configurado).
+     * @return A página de resumos e o cursor da próxima (nulo se esta é a última).
+     * @throws IllegalArgumentException se o cursor for inválido.
+     */
+    @Transactional(readOnly = true)
+    public PaginaResumosDTO listarResumosPorUsuario(Long usuarioId, String cursor, Integer limite) {
+        int tamanho = tamanhoPagina(limite);
+        PageRequest pagina = PageRequest.of(0, tamanho + 1);
+
+        List<EntradaResumoDTO> resumos;
+        if (cursor == null || cursor.isBlank()) {
+            resumos = entradaDiarioRepository.findResumosPrimeiraPagina(usuarioId, pagina);
+        } else {
+            CursorEntrada posicao = CursorEntrada.decodificar(cursor);
+            resumos = entradaDiarioRepository.findResumosApos(usuarioId, posicao.getData(), posicao.getId(), pagina);
+        }
+
+        String proximoCursor = null;
+        if (resumos.size() > tamanho) {
+            resumos = resumos.subList(0, tamanho);
+            EntradaResumoDTO ultima = resumos.get(tamanho - 1);
+            proximoCursor = new CursorEntrada(ultima.getData(), ultima.getId()).codificar();
+        }
+        preencherMidiasDosResumos(resumos);
+        return new PaginaResumosDTO(resumos, proximoCursor);
+    }
+
+    private int tamanhoPagina(Integer limite) {
+        return limite == null ? tamanhoPaginaPadrao : Math.max(1, Math.min(limite, tamanhoPaginaMaximo));
+    }
+
+    private void preencherMidiasDosResumos(List<EntradaResumoDTO> resumos) {
+        if (resumos.isEmpty()) {
+            return;
+        }
+        Map<Long, EntradaResumoDTO> porId = new HashMap<>();
+        resumos.forEach(resumo -> porId.put(resumo.getId(), resumo));
+
+        for (Object[] linha : midiaEntradaRepository.contarPorEntradaETipo(porId.keySet())) {
+            EntradaResumoDTO resumo = porId.get((Long) linha[0]);
+            long quantidade = (Long) linha[2];
+            resumo.getMidiasPorTipo().put((String) linha[1], quantidade);
+            resumo.setTotalMidias(resumo.getTotalMidias() + quantidade);
+        }
+        for (Object[] linha : midiaEntradaRepository.findPrimeiraImagemPorEntrada(porId.keySet())) {
+            porId.get((Long) linha[0]).setMiniatura((String) linha[1]);
+        }
+    }
+
+    // Carrega as mídias de todas as entradas de uma vez e agrupa em memória, sem tocar na coleção lazy de cada uma
+    private Map<Long, List<MidiaEntrada>> buscarMidiasPorEntrada(List<EntradaDiario> entradas) {
+        if (entradas.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> ids = entradas.stream().map(EntradaDiario::getId).toList();
+        Map<Long, List<MidiaEntrada>> midiasPorEntrada = new HashMap<>();
+        for (MidiaEntrada midia : midiaEntradaRepository.findByEntradaDiarioIdIn(ids)) {
+            midiasPorEntrada.computeIfAbsent(midia.getEntradaDiario().getId(), id -> new ArrayList<>()).add(midia);
+        }
+        return midiasPorEntrada;
     }
 
     /**
@@ -50,47 +181,64 @@ public class EntradaDiarioService {
      * @param entradaDiario O objeto EntradaDiario a ser criado.
      * @param usuarioId O ID do usuário ao qual a entrada será associada.
      * @return A EntradaDiario salva após a operação.
-     * @throws RuntimeException se o usuário não for encontrado.
+     * @throws org.springframework.dao.DataIntegrityViolationException se o usuário não existir.
      */
     @Transactional // Transactional garante que todas as operações relacionadas ao salvamento
     // e anexação de mídias tão juntos na mesma transação
     public EntradaDiario criarEntrada(EntradaDiario entradaDiario, Long usuarioId) {
-        Usuario usuario = usuarioRepository.findById(usuarioId)
-                .orElseThrow(() -> new RuntimeException("Usuário não encontrado"));
-        entradaDiario.setUsuario(usuario);
-        return entradaDiarioRepository.save(entradaDiario);
+        // Só a chave do dono vai no INSERT: referência sem SELECT no usuário (a chave estrangeira confere)
+        entradaDiario.setUsuario(usuarioRepository.getReferenceById(usuarioId));
+        registrarAlteracao(entradaDiario, usuarioId);
+        EntradaDiario salva = entradaDiarioRepository.save(entradaDiario);
+        calendarioService.registrar(usuarioId, salva.getData(), 1, quantidadeMidias(salva));
+        eventPublisher.publishEvent(EntradaAlteradaEvent.gravada(salva));
+        return salva;
     }
 
     /**
-     * Busca uma entrada do diário pelo seu ID.
+     * Busca uma entrada do diário pelo seu ID, se ela for do usuário.
      * @param id O ID da entrada a ser buscada.
-     * @return Um Optional contendo a EntradaDiario se encontrada, ou um Optional vazio.
+     * @param usuarioId O ID do usuário autenticado.
+     * @return Um Optional contendo a EntradaDiario, ou vazio se ela não existe ou é de outro usuário.
      */
     @Transactional(readOnly = true) // Garante que as mídias podem ser carregadas em Lazy
-    public Optional<EntradaDiario> buscarPorId(Long id) {
-        return entradaDiarioRepository.findByIdWithMidias(id);
+    public Optional<EntradaDiario> buscarPorId(Long id, Long usuarioId) {
+        return entradaDiarioRepository.findDoUsuarioComMidias(id, usuarioId);
     }
 
     /**
      * Deleta uma entrada do diário pelo seu ID.
-     * Antes de deletar a entrada do DB, apaga os arquivos físicos associados.
+     * Antes de deletar a entrada do DB, solta as referências aos arquivos físicos associados;
+     * um arquivo só é agendado pra remoção se nenhuma outra entrada usar o mesmo conteúdo,
+     * e o disco é limpo em segundo plano depois do commit.
      * @param id O ID da entrada a ser deletada.
+     * @param usuarioId O ID do usuário autenticado (tem que ser o dono da entrada).
+     * @return false se a entrada não existe.
+     * @throws AccessDeniedException se o usuário não for o dono da entrada.
      */
     @Transactional
-    public void deletarEntrada(Long id) {
-        EntradaDiario entrada = entradaDiarioRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Entrada de diário não encontrada com ID: " + id));
-
-        // Apaga todos os arquivos físicos associados a esta entrada
-        entrada.getMidias().forEach(midia -> {
-            try {
-                apagarArquivoFisico(midia.getCaminhoArquivo());
-            } catch (IOException e) {
-                System.err.println("Aviso: Não foi possível apagar o arquivo físico da mídia " + midia.getCaminhoArquivo() + ": " + e.getMessage());
+    public boolean deletarEntrada(Long id, Long usuarioId) {
+        Optional<EntradaDiario> encontrada = entradaDiarioRepository.findDoUsuarioComMidias(id, usuarioId);
+        if (encontrada.isEmpty()) {
+            // Só no caminho de erro: distingue entrada inexistente de entrada de outro usuário
+            if (entradaDiarioRepository.existsById(id)) {
+                throw new AccessDeniedException("Entrada " + id + " não pertence ao usuário " + usuarioId);
             }
-        });
+            return false;
+        }
+        EntradaDiario entrada = encontrada.get();
+
+        registrarExclusao(usuarioId, id);
 
-        entradaDiarioRepository.deleteById(id);
+        // Solta os arquivos em ordem de hash pra duas deleções simultâneas travarem as linhas na mesma ordem
+        entrada.getMidias().stream()
+                .sorted(Comparator.comparing(MidiaEntrada::getHashConteudo, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .forEach(armazenamentoMidiaService::liberarReferencia);
+
+        entradaDiarioRepository.delete(entrada);
+        calendarioService.registrar(usuarioId, entrada.getData(), -1, -quantidadeMidias(entrada));
+        eventPublisher.publishEvent(EntradaAlteradaEvent.removida(entrada));
+        return true;
     }
 
     /**
@@ -100,12 +248,127 @@ public class EntradaDiarioService {
      */
     @Transactional
     public EntradaDiario atualizarEntrada(EntradaDiario entradaDiario) {
-        return entradaDiarioRepository.save(entradaDiario);
+        // Como estava antes do merge, pra tirar a contagem do dia antigo se a data ou as mídias mudaram
+        Optional<EntradaDiario> anterior = entradaDiario.getId() == null
+                ? Optional.empty() : entradaDiarioRepository.findById(entradaDiario.getId());
+        LocalDate dataAnterior = anterior.map(EntradaDiario::getData).orElse(null);
+        int midiasAnteriores = anterior.map(this::quantidadeMidias).orElse(0);
+
+        Long usuarioId = anterior.map(EntradaDiario::getUsuario).orElse(entradaDiario.getUsuario()).getId();
+        registrarAlteracao(entradaDiario, usuarioId); // Antes do merge, pra versão sair no mesmo UPDATE
+        EntradaDiario salva = entradaDiarioRepository.save(entradaDiario);
+        if (anterior.isPresent()) {
+            calendarioService.registrar(usuarioId, dataAnterior, -1, -midiasAnteriores);
+        }
+        calendarioService.registrar(usuarioId, salva.getData(), 1, quantidadeMidias(salva));
+        eventPublisher.publishEvent(EntradaAlteradaEvent.gravada(salva));
+        return salva;
+    }
+
+    /**
+     * Cria uma entrada já com as mídias, tudo numa transação só.
+     * Os arquivos já devem estar gravados no disco (ver {@link ArmazenamentoMidiaService#gravarTemporarios(List)}),
+     * então a transação só faz o trabalho de banco e os renames.
+     *
+     * @param entradaDiario O objeto EntradaDiario a ser criado.
+     * @param usuarioId     O ID do usuário ao qual a entrada será associada.
+     * @param arquivos      Os arquivos temporários a anexar.
+     * @return A EntradaDiario salva, com a lista de mídias preenchida.
+     * @throws RuntimeException se algum arquivo não puder ser confirmado.
+     */
+    @Transactional
+    public EntradaDiario criarEntradaComMidias(EntradaDiario entradaDiario, Long usuarioId,
+                                               List<ArmazenamentoMidiaService.ArquivoTemporario> arquivos) {
+        entradaDiario.setUsuario(usuarioRepository.getReferenceById(usuarioId));
+        registrarAlteracao(entradaDiario, usuarioId);
+
+        for (ArmazenamentoMidiaService.ArquivoTemporario temporario : arquivos) {
+            adicionarMidia(entradaDiario, temporario, inferirTipoArquivo(temporario.getContentType()));
+        }
+
+        // O cascade da entrada grava as mídias junto
+        EntradaDiario salva = entradaDiarioRepository.save(entradaDiario);
+        calendarioService.registrar(usuarioId, salva.getData(), 1, quantidadeMidias(salva));
+        eventPublisher.publishEvent(EntradaAlteradaEvent.gravada(salva));
+        return salva;
+    }
+
+    /**
+     * Atualiza título, conteúdo e mídias de uma entrada numa transação só:
+     * a entrada é carregada uma vez, as mídias removidas e as novas saem no mesmo flush.
+     *
+     * @param id               O ID da entrada a ser atualizada.
+     * @param usuarioId        O ID do usuário autenticado (tem que ser o dono da entrada).
+     * @param titulo           O novo título da entrada.
+     * @param conteudo         O novo conteúdo da entrada.
+     * @param novosArquivos    Os arquivos temporários a anexar.
+     * @param idsMidiasRemover Os IDs das mídias a remover (pode ser nulo).
+     * @return A EntradaDiario atualizada, ainda gerenciada, com a lista de mídias em dia.
+     * @throws AccessDeniedException se o usuário não for o dono da entrada.
+     * @throws IllegalArgumentException se algum ID a remover não for de uma mídia desta entrada.
+     * @throws RuntimeException se a entrada não for encontrada ou algum arquivo não puder ser confirmado.
+     */
+    @Transactional
+    public EntradaDiario atualizarEntradaComMidias(Long id, Long usuarioId, String titulo, String conteudo,
+                                                   List<ArmazenamentoMidiaService.ArquivoTemporario> novosArquivos,
+                                                   List<Long> idsMidiasRemover) {
+        EntradaDiario entrada = entradaDiarioRepository.findByIdWithMidias(id)
+                .orElseThrow(() -> new RuntimeException("Entrada não encontrada com o ID: " + id));
+
+        if (!entrada.getUsuario().getId().equals(usuarioId)) {
+            throw new AccessDeniedException("Entrada " + id + " não pertence ao usuário " + usuarioId);
+        }
+
+        // Mídias a remover, procuradas na lista já carregada em vez de ir no banco de novo.
+        // Um ID que não é desta entrada recusa a atualização inteira, antes de mexer em qualquer coisa
+        List<MidiaEntrada> remover = new ArrayList<>();
+        if (idsMidiasRemover != null) {
+            List<Long> desconhecidas = new ArrayList<>();
+            for (Long midiaId : idsMidiasRemover) {
+                entrada.getMidias().stream()
+                        .filter(midia -> midia.getId().equals(midiaId))
+                        .findFirst()
+                        .ifPresentOrElse(remover::add, () -> desconhecidas.add(midiaId));
+            }
+            if (!desconhecidas.isEmpty()) {
+                logger.warn("Mídias {} não pertencem à entrada {}, atualização recusada", desconhecidas, id);
+                throw new IllegalArgumentException("Mídias não pertencem à entrada " + id + ": " + desconhecidas);
+            }
+        }
+
+        // A versão é marcada antes de mexer na entrada: as consultas abaixo dão flush,
+        // e assim a linha da entrada vai num UPDATE só
+        long versao = registrarAlteracao(entrada, usuarioId);
+        entrada.setTitulo(titulo);
+        entrada.setConteudo(conteudo);
+        int midiasAntes = entrada.getMidias().size();
+
+        // 1. Remove as mídias pedidas
+        if (!remover.isEmpty()) {
+            remover.sort(Comparator.comparing(MidiaEntrada::getHashConteudo, Comparator.nullsFirst(Comparator.naturalOrder())));
+            for (MidiaEntrada midia : remover) {
+                armazenamentoMidiaService.liberarReferencia(midia);
+                // orphanRemoval apaga a linha no flush
+                entrada.removeMidia(midia);
+            }
+        }
+
+        // 2. Adiciona as novas mídias
+        for (ArmazenamentoMidiaService.ArquivoTemporario temporario : novosArquivos) {
+            adicionarMidia(entrada, temporario, inferirTipoArquivo(temporario.getContentType()));
+        }
+
+        registrarMidiasRemovidas(usuarioId, versao, id, remover);
+        EntradaDiario salva = entradaDiarioRepository.save(entrada);
+        calendarioService.registrar(usuarioId, salva.getData(), 0, salva.getMidias().size() - midiasAntes);
+        eventPublisher.publishEvent(EntradaAlteradaEvent.gravada(salva));
+        return salva;
     }
 
     /**
      * Anexa uma mídia (imagem, vídeo, áudio, documento) a uma entrada de diário existente.
      * Salva o arquivo no sistema de arquivos e os metadados no banco de dados.
+     * Se o mesmo conteúdo já foi enviado antes, o arquivo existente é reaproveitado.
      *
      * @param entradaId O ID da entrada de diário à qual a mídia será anexada.
      * @param file O arquivo MultipartFile recebido da requisição.
@@ -122,43 +385,68 @@ public class EntradaDiarioService {
             throw new RuntimeException("Arquivo vazio. Por favor, selecione um arquivo para upload.");
         }
 
+        ArmazenamentoMidiaService.ArquivoTemporario temporario;
         try {
-            Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
-            Files.createDirectories(uploadPath);
-
-            String originalFileName = file.getOriginalFilename();
-            String fileExtension = "";
-            if (originalFileName != null && originalFileName.contains(".")) {
-                fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-            }
-            String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
-            Path filePath = uploadPath.resolve(uniqueFileName);
+            // O SHA-256 é calculado enquanto o upload é gravado, sem reler o arquivo
+            temporario = armazenamentoMidiaService.gravarTemporario(file);
+        } catch (IOException ex) {
+            throw new RuntimeException("Falha ao armazenar o arquivo " + file.getOriginalFilename() + ". Por favor, tente novamente!", ex);
+        }
 
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            registrarAlteracao(entrada, entrada.getUsuario().getId());
+            MidiaEntrada midia = midiaEntradaRepository.save(adicionarMidia(entrada, temporario, tipoArquivo));
+            calendarioService.registrar(entrada.getUsuario().getId(), entrada.getData(), 0, 1);
+            return midia;
+        } catch (RuntimeException ex) {
+            armazenamentoMidiaService.descartar(temporario);
+            throw ex;
+        }
+    }
 
-            MidiaEntrada midia = new MidiaEntrada(
-                    entrada,
-                    tipoArquivo,
-                    filePath.toString(),
-                    originalFileName
-            );
+    /**
+     * Anexa a uma entrada um arquivo que já está na pasta temporária do armazenamento com o hash calculado
+     * (ex: fim de um upload em pedaços).
+     *
+     * @param entradaId  O ID da entrada de diário à qual a mídia será anexada.
+     * @param usuarioId  O ID do usuário autenticado (tem que ser o dono da entrada).
+     * @param temporario O arquivo temporário.
+     * @return O objeto MidiaEntrada salvo no banco de dados.
+     * @throws AccessDeniedException se o usuário não for o dono da entrada.
+     * @throws RuntimeException se a entrada não for encontrada ou o arquivo não puder ser confirmado.
+     */
+    @Transactional
+    public MidiaEntrada anexarArquivoTemporario(Long entradaId, Long usuarioId, ArmazenamentoMidiaService.ArquivoTemporario temporario) {
+        EntradaDiario entrada = entradaDiarioRepository.findByIdWithMidias(entradaId)
+                .orElseThrow(() -> new RuntimeException("Entrada de diário não encontrada com ID: " + entradaId));
 
-            // Adiciona a mídia à lista da entrada e define a relação bidirecional
-            entrada.addMidia(midia);
+        if (!entrada.getUsuario().getId().equals(usuarioId)) {
+            throw new AccessDeniedException("Entrada " + entradaId + " não pertence ao usuário " + usuarioId);
+        }
 
-            return midiaEntradaRepository.save(midia);
+        registrarAlteracao(entrada, usuarioId);
+        MidiaEntrada midia = midiaEntradaRepository.save(adicionarMidia(entrada, temporario, inferirTipoArquivo(temporario.getContentType())));
+        calendarioService.registrar(usuarioId, entrada.getData(), 0, 1);
+        return midia;
+    }
 
-        } catch (IOException ex) {
-            throw new RuntimeException("Falha ao armazenar o arquivo " + file.getOriginalFilename() + ". Por favor, tente novamente!", ex);
-        }
+    /**
+     * O dono de uma entrada, sem carregar a entrada.
+     *
+     * @param entradaId O ID da entrada.
+     * @return O ID do dono, ou vazio se a entrada não existe.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> donoDaEntrada(Long entradaId) {
+        return entradaDiarioRepository.findDonoPorId(entradaId);
     }
 
     /**
      * Remove uma mídia específica de uma entrada de diário.
-     * Deleta o arquivo físico e o registro no banco de dados.
+     * Deleta o registro no banco de dados e agenda a remoção do arquivo físico, se nenhuma outra mídia usar o mesmo conteúdo.
      * @param midiaId O ID da mídia a ser removida.
      * @param entradaId O ID da entrada de diário à qual a mídia pertence (para validação de segurança).
-     * @throws RuntimeException se a mídia não for encontrada ou não pertencer à entrada especificada, ou erro ao apagar o arquivo.
+     * @throws RuntimeException se a mídia não for encontrada ou não pertencer à entrada especificada.
      */
     @Transactional
     public void removerMidiaDaEntrada(Long midiaId, Long entradaId) {
@@ -173,27 +461,136 @@ public class EntradaDiarioService {
             throw new RuntimeException("Mídia não pertence à entrada de diário especificada.");
         }
 
-        try {
-            apagarArquivoFisico(midia.getCaminhoArquivo());
-        } catch (IOException e) {
-            throw new RuntimeException("Erro ao apagar o arquivo físico da mídia " + midia.getNomeOriginalArquivo() + ": " + e.getMessage(), e);
-        }
+        long versao = registrarAlteracao(entrada, entrada.getUsuario().getId());
+        registrarMidiasRemovidas(entrada.getUsuario().getId(), versao, entradaId, List.of(midia));
+        armazenamentoMidiaService.liberarReferencia(midia);
 
         // Remove a mídia da lista da EntradaDiario para manter a consistência do modelo em memória
         entrada.removeMidia(midia);
 
         midiaEntradaRepository.delete(midia);
+        calendarioService.registrar(entrada.getUsuario().getId(), entrada.getData(), 0, -1);
+    }
+
+    // Nova versão do diário do dono (ETag, páginas em cache e sincronização), marcada na entrada; a entrada sai do cache.
+    // Vem antes de travar arquivos ou contagens: toda gravação trava a linha da versão primeiro, então não tem impasse
+    private long registrarAlteracao(EntradaDiario entrada, Long usuarioId) {
+        long versao = versaoDiarioService.incrementar(usuarioId);
+        entrada.setAlteradaNaVersao(versao);
+        if (entrada.getId() != null) {
+            cacheEntradasService.invalidarEntrada(entrada.getId());
+        }
+        return versao;
+    }
+
+    // Nova versão do diário do dono e o registro da exclusão, pros clientes sincronizados apagarem a cópia deles
+    private void registrarExclusao(Long usuarioId, Long entradaId) {
+        long versao = versaoDiarioService.incrementar(usuarioId);
+        exclusaoDiarioRepository.save(ExclusaoDiario.daEntrada(usuarioId, versao, entradaId));
+        cacheEntradasService.invalidarEntrada(entradaId);
+    }
+
+    private void registrarMidiasRemovidas(Long usuarioId, long versao, Long entradaId, List<MidiaEntrada> removidas) {
+        exclusaoDiarioRepository.saveAll(removidas.stream()
+                .map(midia -> ExclusaoDiario.daMidia(usuarioId, versao, entradaId, midia.getId()))
+                .toList());
+    }
+
+    /**
+     * Confirma o arquivo temporário no armazenamento e pendura a nova mídia na entrada, já com os metadados.
+     * A mídia é gravada pelo cascade da entrada (ou explicitamente por quem chamou).
+     */
+    private MidiaEntrada adicionarMidia(EntradaDiario entrada, ArmazenamentoMidiaService.ArquivoTemporario temporario,
+                                        String tipoArquivo) {
+        ArquivoMidia arquivo;
+        try {
+            arquivo = armazenamentoMidiaService.confirmar(temporario);
+        } catch (IOException ex) {
+            throw new RuntimeException("Falha ao armazenar o arquivo " + temporario.getNomeOriginal() + ". Por favor, tente novamente!", ex);
+        }
+
+        MidiaEntrada midia = new MidiaEntrada(
+                entrada,
+                tipoArquivo,
+                armazenamentoMidiaService.resolverCaminho(arquivo.getNomeArquivo()).toString(),
+                temporario.getNomeOriginal()
+        );
+        midia.setHashConteudo(arquivo.getHashConteudo());
+        // Lidos quando o arquivo foi gravado, fora da transação
+        temporario.getMetadados().aplicar(midia);
+
+        // Adiciona a mídia à lista da entrada e define a relação bidirecional
+        entrada.addMidia(midia);
+        return midia;
+    }
+
+    // Quantas mídias a entrada tem agora, pras contagens do calendário
+    private int quantidadeMidias(EntradaDiario entrada) {
+        return entrada.getMidias() == null ? 0 : entrada.getMidias().size();
     }
 
     /**
-     * Método auxiliar para apagar um arquivo do disco.
-     * @param caminhoCompletoArquivo O caminho completo do arquivo a ser apagado.
-     * @throws IOException Se ocorrer um erro durante a operação de E/S.
+     * Método auxiliar para inferir o tipo de arquivo com base no Content-Type.
+     *
+     * @param contentType O Content-Type enviado com o arquivo (pode ser nulo).
+     * @return Uma string representando o tipo de arquivo (ex: "imagem", "video", "documento_pdf").
      */
-    private void apagarArquivoFisico(String caminhoCompletoArquivo) throws IOException {
-        Path filePath = Paths.get(caminhoCompletoArquivo);
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
+    private static String inferirTipoArquivo(String contentType) {
+        if (contentType == null) {
+            return "desconhecido";
+        }
+        if (contentType.startsWith("image/")) {
+            return "imagem";
+        } else if (contentType.startsWith("video/")) {
+            return "video";
+        } else if (contentType.startsWith("audio/")) {
+            return "audio";
+        } else if (contentType.equals("application/pdf")) {
+            return "documento_pdf";
+        } else if (contentType.equals("application/msword") || contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
+            return "documento_word";
+        }
+        // Dá pra meter mais tipos MIME depois
+        return "outro_documento";
+    }
+
+    /**
+     * Uma página da listagem de entradas.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class PaginaEntradas {
+        private final List<EntradaDiario> entradas;
+        private final Map<Long, List<MidiaEntrada>> midiasPorEntrada;
+        private final String proximoCursor; // Nulo na última página
+
+        public List<MidiaEntrada> midiasDe(Long entradaId) {
+            return midiasPorEntrada.getOrDefault(entradaId, List.of());
+        }
+    }
+
+    /**
+     * Posição (data, id) da última entrada de uma página, passada pro cliente como texto opaco em Base64.
+     */
+    @Getter
+    @AllArgsConstructor
+    static class CursorEntrada {
+        private final LocalDate data;
+        private final Long id;
+
+        String codificar() {
+            String texto = data + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static CursorEntrada decodificar(String cursor) {
+            try {
+                String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separador = texto.indexOf('|');
+                return new CursorEntrada(LocalDate.parse(texto.substring(0, separador)), Long.parseLong(texto.substring(separador + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + cursor);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package com.diario.service;
+
+import com.diario.dto.EntradaExportadaDTO;
+import com.diario.dto.MidiaEntradaDTO;
+import com.diario.repository.EntradaDiarioRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exporta o diário inteiro de um usuário (backup), escrevendo direto na resposta.
+ *
+ * As entradas são lidas em fluxo (uma linha por vez do MySQL, sem entidades no contexto de persistência)
+ * e cada uma vira uma linha de JSON assim que as mídias dela acabam de chegar, então a memória não cresce
+ * com o tamanho do diário. No ZIP, os arquivos só são copiados depois que a transação fecha: durante a leitura
+ * os nomes vão pra um arquivo temporário, e a conexão volta pro pool antes dos gigas de mídia.
+ */
+@Service
+public class ExportacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportacaoService.class);
+
+    private static final String NOME_ENTRADAS_ZIP = "entradas.ndjson";
+    private static final String PASTA_MIDIAS_ZIP = "midias/";
+
+    @Autowired
+    private EntradaDiarioRepository entradaDiarioRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Escreve as entradas do usuário como NDJSON (uma entrada por linha, com as mídias).
+     *
+     * @param usuarioId O dono das entradas.
+     * @param saida     Onde escrever (o corpo da resposta); não é fechado aqui.
+     * @throws IOException se a escrita falhar (ex: o cliente desistiu).
+     */
+    public void exportarNdjson(Long usuarioId, OutputStream saida) throws IOException {
+        BufferedOutputStream buffer = new BufferedOutputStream(saida, 64 * 1024);
+        lerEntradas(usuarioId, lida -> escreverLinha(lida.getEntrada(), buffer));
+        buffer.flush();
+    }
+
+    /**
+     * Escreve um ZIP com entradas.ndjson e os arquivos das mídias em midias/.
+     * Arquivos usados por várias entradas (mesmo conteúdo) vão uma vez só.
+     *
+     * @param usuarioId O dono das entradas.
+     * @param saida     Onde escrever (o corpo da resposta); não é fechado aqui.
+     * @throws IOException se a escrita falhar (ex: o cliente desistiu).
+     */
+    public void exportarZip(Long usuarioId, OutputStream saida) throws IOException {
+        Path nomesArquivos = Files.createTempFile("exportacao-", ".txt");
+        try {
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(saida, 64 * 1024));
+
+            // 1. Entradas, lidas em fluxo; os arquivos de cada mídia só são anotados
+            zip.setLevel(Deflater.BEST_SPEED);
+            zip.putNextEntry(new ZipEntry(NOME_ENTRADAS_ZIP));
+            try (BufferedWriter nomes = Files.newBufferedWriter(nomesArquivos, StandardCharsets.UTF_8)) {
+                lerEntradas(usuarioId, lida -> {
+                    escreverLinha(lida.getEntrada(), zip);
+                    try {
+                        for (String nome : lida.getArquivos()) {
+                            nomes.write(nome);
+                            nomes.newLine();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            zip.closeEntry();
+
+            // 2. Arquivos, já fora da transação. Fotos e vídeos já vêm comprimidos: vão sem recomprimir
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            WritableByteChannel canalZip = Channels.newChannel(zip);
+            try (BufferedReader nomes = Files.newBufferedReader(nomesArquivos, StandardCharsets.UTF_8)) {
+                String nome;
+                while ((nome = nomes.readLine()) != null) {
+                    copiarArquivo(nome, zip, canalZip);
+                }
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            Files.deleteIfExists(nomesArquivos);
+        }
+    }
+
+    /**
+     * Nome sugerido pro arquivo baixado.
+     *
+     * @param extensao "ndjson" ou "zip".
+     * @return Ex: diario-2025-01-31.zip
+     */
+    public String nomeArquivo(String extensao) {
+        return "diario-" + LocalDate.now() + "." + extensao;
+    }
+
+    // Junta as linhas de cada entrada (uma por mídia) e entrega a entrada pronta assim que vem a próxima
+    private void lerEntradas(Long usuarioId, Consumer<EntradaLida> destino) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> linhas = entradaDiarioRepository.streamParaExportacao(usuarioId)) {
+                    EntradaLida atual = null;
+                    for (Object[] linha : (Iterable<Object[]>) linhas::iterator) {
+                        Long entradaId = (Long) linha[0];
+                        if (atual == null || !atual.getEntrada().getId().equals(entradaId)) {
+                            if (atual != null) {
+                                destino.accept(atual);
+                            }
+                            atual = new EntradaLida(new EntradaExportadaDTO(entradaId, (LocalDate) linha[1], (String) linha[2],
+                                    (String) linha[3], new ArrayList<>()), new ArrayList<>());
+                        }
+                        if (linha[4] != null) {
+                            atual.getEntrada().getMidias().add(new MidiaEntradaDTO((Long) linha[4], (String) linha[5],
+                                    (String) linha[6], (String) linha[7], (Long) linha[8], (Integer) linha[9],
+                                    (Integer) linha[10], (Long) linha[11], (String) linha[12], (String) linha[13]));
+                            // O nome no armazenamento é <hash>.<extensão>; mídia antiga sem hash usa o fim do caminho
+                            atual.getArquivos().add(linha[14] != null ? (String) linha[14]
+                                    : ArmazenamentoMidiaService.nomeDoCaminho((String) linha[15]));
+                        }
+                    }
+                    if (atual != null) {
+                        destino.accept(atual);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void escreverLinha(EntradaExportadaDTO entrada, OutputStream saida) {
+        try {
+            saida.write(objectMapper.writeValueAsBytes(entrada));
+            saida.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void copiarArquivo(String nome, ZipOutputStream zip, WritableByteChannel canalZip) throws IOException {
+        Optional<ArmazenamentoMidiaService.ArquivoLocalizado> localizado = armazenamentoMidiaService.localizar(nome);
+        if (localizado.isEmpty()) {
+            logger.warn("Arquivo {} não encontrado no disco, fica fora da exportação", nome);
+            return;
+        }
+        try {
+            zip.putNextEntry(new ZipEntry(PASTA_MIDIAS_ZIP + nome));
+        } catch (ZipException e) {
+            return; // Mesmo arquivo em outra entrada (deduplicado pelo hash): já foi
+        }
+        try (FileChannel arquivo = FileChannel.open(localizado.get().getCaminho(), StandardOpenOption.READ)) {
+            long tamanho = arquivo.size();
+            long copiados = 0;
+            while (copiados < tamanho) {
+                long transferidos = arquivo.transferTo(copiados, tamanho - copiados, canalZip);
+                if (transferidos <= 0) {
+                    break; // Arquivo encolheu no meio da cópia
+                }
+                copiados += transferidos;
+            }
+        }
+        zip.closeEntry();
+    }
+
+    // Entrada lida e os nomes dos arquivos das mídias dela, que vão pro ZIP mas não pro NDJSON
+    @Getter
+    @AllArgsConstructor
+    private static class EntradaLida {
+        private final EntradaExportadaDTO entrada;
+        private final List<String> arquivos;
+    }
+}
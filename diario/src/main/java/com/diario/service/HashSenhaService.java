@@ -0,0 +1,150 @@
+package com.diario.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * BCrypt das senhas (login, cadastro e redefinição) fora das threads do Tomcat.
+ *
+ * Cada hash custa dezenas de milissegundos de CPU de propósito; uma rajada de logins rodando direto nas
+ * threads das requisições ocupava todos os núcleos e travava as leituras comuns da API. Aqui os hashes
+ * rodam num executor próprio com poucas threads (metade dos núcleos por padrão) e fila limitada:
+ * com a fila cheia, ou esperando demais, a requisição recebe {@link RejectedExecutionException} na hora
+ * (o controller responde 503) em vez de empilhar trabalho.
+ *
+ * Métricas: auth.hash (tempo de cada hash, por operação), auth.hash.fila e auth.hash.rejeitados.
+ */
+@Service
+public class HashSenhaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashSenhaService.class);
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 0 = metade dos núcleos (pelo menos uma)
+    @Value("${auth.hash.threads:0}")
+    private int threads;
+
+    @Value("${auth.hash.fila:64}")
+    private int tamanhoFila;
+
+    // Quanto uma requisição espera na fila + hash antes de desistir com 503
+    @Value("${auth.hash.espera-maxima-ms:5000}")
+    private long esperaMaximaMs;
+
+    private ThreadPoolExecutor executor;
+    private Timer tempoCodificar;
+    private Timer tempoConferir;
+    private Counter rejeitados;
+
+    @PostConstruct
+    void iniciarExecutor() {
+        int quantidade = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        executor = new ThreadPoolExecutor(quantidade, quantidade, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(tamanhoFila),
+                tarefa -> {
+                    Thread thread = new Thread(tarefa, "hash-senha");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()); // Fila cheia: RejectedExecutionException pra quem pediu
+        executor.allowCoreThreadTimeOut(true);
+
+        tempoCodificar = Timer.builder("auth.hash").tag("operacao", "codificar")
+                .description("Tempo de CPU de cada hash de senha").register(meterRegistry);
+        tempoConferir = Timer.builder("auth.hash").tag("operacao", "conferir")
+                .description("Tempo de CPU de cada hash de senha").register(meterRegistry);
+        rejeitados = Counter.builder("auth.hash.rejeitados")
+                .description("Hashes recusados por fila cheia ou espera longa demais").register(meterRegistry);
+        Gauge.builder("auth.hash.fila", executor, e -> e.getQueue().size())
+                .description("Hashes de senha esperando thread").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void encerrarExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gera o hash de uma senha nova, com o custo configurado.
+     *
+     * @param senha A senha em texto.
+     * @return O hash pra gravar.
+     * @throws RejectedExecutionException se os hashes estão sobrecarregados (responder 503).
+     */
+    public String codificar(String senha) {
+        return executar(() -> tempoCodificar.recordCallable(() -> passwordEncoder.encode(senha)));
+    }
+
+    /**
+     * Confere uma senha com o hash gravado.
+     *
+     * @param senha A senha em texto.
+     * @param hash  O hash gravado.
+     * @return true se a senha confere.
+     * @throws RejectedExecutionException se os hashes estão sobrecarregados (responder 503).
+     */
+    public boolean confere(String senha, String hash) {
+        return executar(() -> tempoConferir.recordCallable(() -> passwordEncoder.matches(senha, hash)));
+    }
+
+    /**
+     * Se o hash foi gerado com custo menor que o configurado (auth.bcrypt.custo subiu), pra ser refeito no login.
+     *
+     * @param hash O hash gravado.
+     * @return true se vale gerar de novo.
+     */
+    public boolean precisaRefazer(String hash) {
+        return passwordEncoder.upgradeEncoding(hash);
+    }
+
+    private <T> T executar(Callable<T> hash) {
+        Future<T> futuro;
+        try {
+            futuro = executor.submit(hash);
+        } catch (RejectedExecutionException e) {
+            rejeitados.increment();
+            logger.warn("Fila de hash de senha cheia ({} esperando), requisição recusada", executor.getQueue().size());
+            throw e;
+        }
+        try {
+            return futuro.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(false); // Se ainda nem começou, sai da fila
+            rejeitados.increment();
+            throw new RejectedExecutionException("Hash de senha demorou mais que " + esperaMaximaMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futuro.cancel(false);
+            throw new RejectedExecutionException("Interrompido esperando o hash de senha", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException("Erro no hash de senha", e.getCause());
+        }
+    }
+}
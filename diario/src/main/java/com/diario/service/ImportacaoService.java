@@ -0,0 +1,252 @@
+package com.diario.service;
+
+import com.diario.dto.EntradaExportadaDTO;
+import com.diario.dto.MidiaEntradaDTO;
+import com.diario.model.ArquivoMidia;
+import com.diario.model.EntradaDiario;
+import com.diario.model.MidiaEntrada;
+import com.diario.model.Usuario;
+import com.diario.repository.ArquivoMidiaRepository;
+import com.diario.repository.MidiaEntradaRepository;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Importação em massa de entradas (migração de outros apps de diário), a partir de NDJSON no mesmo
+ * formato da exportação: uma entrada por linha, lida em fluxo direto do corpo da requisição.
+ *
+ * As entradas são gravadas em lotes, um commit por lote, com os INSERTs agrupados em lotes JDBC
+ * (os IDs vêm em blocos do gerador_id, então o Hibernate não precisa de um ida-e-volta por linha).
+ * Se uma linha estiver quebrada, o que já foi confirmado fica, e o progresso diz até onde chegou.
+ *
+ * Mídias só entram se apontam (por hashConteudo) pra um arquivo que o usuário já tem no armazenamento,
+ * ex: ao restaurar um backup na mesma conta; as outras são contadas como ignoradas. Os arquivos
+ * novos sobem depois pelo upload normal ou retomável. Do NDJSON a mídia só leva o nome original:
+ * tipo, Content-Type e dimensões vêm de uma mídia que o usuário já tem com o mesmo conteúdo, porque
+ * o Content-Type gravado é o que a rota pública de arquivos responde.
+ */
+@Service
+public class ImportacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportacaoService.class);
+
+    @Autowired
+    private ArquivoMidiaRepository arquivoMidiaRepository;
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private CalendarioService calendarioService;
+
+    @Autowired
+    private VersaoDiarioService versaoDiarioService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${importacao.lote:500}")
+    private int tamanhoLote;
+
+    // Uma importação por usuário de cada vez; fica aqui até a próxima começar, pra consulta do progresso
+    private final Map<Long, ProgressoImportacao> progressos = new ConcurrentHashMap<>();
+
+    /**
+     * Importa as entradas do NDJSON pro usuário, lote por lote.
+     *
+     * @param usuarioId O dono das novas entradas.
+     * @param corpo     O NDJSON (uma EntradaExportadaDTO por linha; o id de cada linha é ignorado).
+     * @return O progresso final, com o erro se parou no meio.
+     * @throws IllegalStateException se já tem uma importação desse usuário rodando.
+     */
+    public ProgressoImportacao importar(Long usuarioId, InputStream corpo) {
+        ProgressoImportacao progresso = new ProgressoImportacao();
+        ProgressoImportacao anterior = progressos.get(usuarioId);
+        if ((anterior != null && !anterior.isConcluida()) || !substituir(usuarioId, anterior, progresso)) {
+            throw new IllegalStateException("Já tem uma importação em andamento pra esse usuário");
+        }
+
+        long inicio = System.currentTimeMillis();
+        List<EntradaExportadaDTO> lote = new ArrayList<>(tamanhoLote);
+        try (MappingIterator<EntradaExportadaDTO> linhas = objectMapper.readerFor(EntradaExportadaDTO.class).readValues(corpo)) {
+            while (linhas.hasNextValue()) {
+                lote.add(linhas.nextValue());
+                progresso.linhasLidas++;
+                if (lote.size() >= tamanhoLote) {
+                    gravarLote(usuarioId, lote, progresso);
+                    lote.clear();
+                }
+            }
+            if (!lote.isEmpty()) {
+                gravarLote(usuarioId, lote, progresso);
+            }
+        } catch (IOException e) {
+            // Linha quebrada ou conexão caiu: o lote incompleto é descartado, os anteriores ficam
+            progresso.erro = "Linha " + (progresso.linhasLidas + 1) + ": " + e.getMessage();
+        } catch (RuntimeException e) {
+            progresso.erro = "Falha ao gravar o lote depois da entrada " + progresso.entradasGravadas + ": " + e.getMessage();
+            logger.error("Importação do usuário {} parou: {}", usuarioId, e.getMessage(), e);
+        } finally {
+            progresso.concluida = true;
+        }
+
+        logger.info("Importação do usuário {}: {} entradas e {} mídias em {} ms ({} mídias ignoradas){}",
+                usuarioId, progresso.entradasGravadas, progresso.midiasGravadas, System.currentTimeMillis() - inicio,
+                progresso.midiasIgnoradas, progresso.erro != null ? ", parou: " + progresso.erro : "");
+        return progresso;
+    }
+
+    /**
+     * Progresso da importação em andamento (ou da última) do usuário.
+     *
+     * @param usuarioId O usuário.
+     * @return O progresso, ou vazio se ele nunca importou desde o start.
+     */
+    public Optional<ProgressoImportacao> progresso(Long usuarioId) {
+        return Optional.ofNullable(progressos.get(usuarioId));
+    }
+
+    private boolean substituir(Long usuarioId, ProgressoImportacao anterior, ProgressoImportacao novo) {
+        return anterior == null ? progressos.putIfAbsent(usuarioId, novo) == null : progressos.replace(usuarioId, anterior, novo);
+    }
+
+    private void gravarLote(Long usuarioId, List<EntradaExportadaDTO> lote, ProgressoImportacao progresso) {
+        int[] gravados = transactionTemplate.execute(status -> {
+            Usuario usuario = entityManager.getReference(Usuario.class, usuarioId);
+            long versao = versaoDiarioService.incrementar(usuarioId); // Uma versão pro lote inteiro
+
+            List<String> hashes = lote.stream()
+                    .flatMap(entrada -> midiasDe(entrada).stream())
+                    .map(MidiaEntradaDTO::getHashConteudo)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .toList();
+            Map<String, ArquivoMidia> arquivos = new HashMap<>();
+            Map<String, MidiaEntrada> modelos = new HashMap<>();
+            if (!hashes.isEmpty()) {
+                arquivoMidiaRepository.findDoUsuarioParaAtualizacao(hashes, usuarioId)
+                        .forEach(arquivo -> arquivos.put(arquivo.getHashConteudo(), arquivo));
+                // Uma mídia existente por conteúdo, de preferência já com metadados
+                for (MidiaEntrada existente : midiaEntradaRepository.findDoUsuarioPorHash(arquivos.keySet(), usuarioId)) {
+                    MidiaEntrada atual = modelos.get(existente.getHashConteudo());
+                    if (atual == null || (atual.getContentType() == null && existente.getContentType() != null)) {
+                        modelos.put(existente.getHashConteudo(), existente);
+                    }
+                }
+            }
+
+            Map<String, Integer> novasReferencias = new HashMap<>();
+            Map<LocalDate, int[]> porDia = new HashMap<>();
+            List<EntradaDiario> entradas = new ArrayList<>(lote.size());
+            int midias = 0;
+            int ignoradas = 0;
+            for (EntradaExportadaDTO linha : lote) {
+                EntradaDiario entrada = new EntradaDiario();
+                entrada.setUsuario(usuario);
+                entrada.setData(linha.getData() != null ? linha.getData() : LocalDate.now());
+                entrada.setTitulo(linha.getTitulo());
+                entrada.setConteudo(linha.getConteudo());
+                entrada.setAlteradaNaVersao(versao);
+
+                for (MidiaEntradaDTO dados : midiasDe(linha)) {
+                    ArquivoMidia arquivo = dados.getHashConteudo() != null ? arquivos.get(dados.getHashConteudo()) : null;
+                    MidiaEntrada modelo = arquivo != null ? modelos.get(arquivo.getHashConteudo()) : null;
+                    if (modelo == null) {
+                        ignoradas++;
+                        continue;
+                    }
+                    entrada.addMidia(novaMidia(entrada, arquivo, modelo, dados.getNomeOriginalArquivo()));
+                    novasReferencias.merge(arquivo.getHashConteudo(), 1, Integer::sum);
+                    midias++;
+                }
+
+                entityManager.persist(entrada); // O cascade leva as mídias junto
+                entradas.add(entrada);
+                int[] contagem = porDia.computeIfAbsent(entrada.getData(), dia -> new int[2]);
+                contagem[0]++;
+                contagem[1] += entrada.getMidias().size();
+            }
+
+            novasReferencias.forEach(arquivoMidiaRepository::somarReferencias);
+            porDia.forEach((dia, contagem) -> calendarioService.registrar(usuarioId, dia, contagem[0], contagem[1]));
+            entradas.forEach(entrada -> eventPublisher.publishEvent(EntradaAlteradaEvent.gravada(entrada)));
+
+            // Manda os INSERTs agrupados e esvazia o contexto, pra memória não crescer de lote em lote
+            entityManager.flush();
+            entityManager.clear();
+            return new int[]{entradas.size(), midias, ignoradas};
+        });
+
+        progresso.entradasGravadas += gravados[0];
+        progresso.midiasGravadas += gravados[1];
+        progresso.midiasIgnoradas += gravados[2];
+        logger.debug("Importação do usuário {}: {} entradas gravadas", usuarioId, progresso.entradasGravadas);
+    }
+
+    // Metadados copiados de uma mídia do usuário com o mesmo conteúdo, gravados pelo servidor no upload
+    private MidiaEntrada novaMidia(EntradaDiario entrada, ArquivoMidia arquivo, MidiaEntrada modelo, String nomeOriginal) {
+        MidiaEntrada midia = new MidiaEntrada(
+                entrada,
+                modelo.getTipoArquivo(),
+                armazenamentoMidiaService.resolverCaminho(arquivo.getNomeArquivo()).toString(),
+                nomeOriginal
+        );
+        midia.setHashConteudo(arquivo.getHashConteudo());
+        midia.setContentType(modelo.getContentType());
+        midia.setTamanhoBytes(arquivo.getTamanhoBytes());
+        midia.setLargura(modelo.getLargura());
+        midia.setAltura(modelo.getAltura());
+        midia.setDuracaoMs(modelo.getDuracaoMs());
+        return midia;
+    }
+
+    private static List<MidiaEntradaDTO> midiasDe(EntradaExportadaDTO entrada) {
+        return entrada.getMidias() != null ? entrada.getMidias() : List.of();
+    }
+
+    /**
+     * Andamento de uma importação. Só a thread da importação escreve; a consulta lê de outra.
+     */
+    @Getter
+    public static class ProgressoImportacao {
+        private volatile long linhasLidas;
+        private volatile long entradasGravadas;
+        private volatile long midiasGravadas;
+        private volatile long midiasIgnoradas;
+        private volatile boolean concluida;
+        private volatile String erro; // Nulo se foi tudo
+    }
+}
@@ -0,0 +1,277 @@
+package com.diario.service;
+
+import com.diario.model.MidiaEntrada;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tira os metadados de um arquivo de mídia uma vez só, no upload: Content-Type, tamanho
+ * e, quando sai barato (só o cabeçalho do arquivo), dimensões de imagens e duração de áudio/vídeo.
+ * Assim o getArquivo e a listagem usam o que está gravado, sem sondar o disco a cada requisição.
+ */
+@Service
+public class MetadadosMidiaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadadosMidiaService.class);
+
+    private static final Map<String, String> TIPOS_POR_EXTENSAO = Map.ofEntries(
+            Map.entry("pdf", "application/pdf"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("png", "image/png"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("bmp", "image/bmp"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("mp4", "video/mp4"),
+            Map.entry("m4v", "video/mp4"),
+            Map.entry("mov", "video/quicktime"),
+            Map.entry("webm", "video/webm"),
+            Map.entry("mp3", "audio/mpeg"),
+            Map.entry("m4a", "audio/mp4"),
+            Map.entry("wav", "audio/wav"),
+            Map.entry("doc", "application/msword"),
+            Map.entry("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+            Map.entry("xls", "application/vnd.ms-excel"),
+            Map.entry("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+    );
+
+    // Formatos que o javax.sound lê o cabeçalho e sabe a quantidade de quadros
+    private static final Set<String> EXTENSOES_AUDIO_PCM = Set.of("wav", "aif", "aiff", "au");
+
+    // Contêiner ISO/QuickTime: a duração fica na caixa moov/mvhd
+    private static final Set<String> EXTENSOES_MP4 = Set.of("mp4", "m4v", "m4a", "mov");
+
+    /**
+     * Lê os metadados de um arquivo já gravado no disco. Nunca falha: o que não der pra ler fica nulo.
+     *
+     * @param arquivo     O arquivo no disco (pode ser o temporário, sem extensão no nome).
+     * @param nomeArquivo O nome de onde sai a extensão (ex: o nome original do upload).
+     * @param tamanho     O tamanho em bytes, já conhecido por quem chamou.
+     * @return Os metadados.
+     */
+    public Metadados extrair(Path arquivo, String nomeArquivo, long tamanho) {
+        String extensao = extensao(nomeArquivo);
+        String contentType = detectarContentType(extensao);
+        Integer largura = null;
+        Integer altura = null;
+        Long duracaoMs = null;
+
+        try {
+            if (contentType.startsWith("image/")) {
+                int[] dimensoes = lerDimensoes(arquivo);
+                if (dimensoes != null) {
+                    largura = dimensoes[0];
+                    altura = dimensoes[1];
+                }
+            } else if (EXTENSOES_AUDIO_PCM.contains(extensao)) {
+                duracaoMs = duracaoAudioPcm(arquivo);
+            } else if (EXTENSOES_MP4.contains(extensao)) {
+                duracaoMs = duracaoMp4(arquivo);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Não foi possível ler os metadados de {}: {}", nomeArquivo, e.getMessage());
+        }
+
+        return new Metadados(contentType, tamanho, largura, altura, duracaoMs);
+    }
+
+    /**
+     * Metadados de uma mídia cujo arquivo não está mais no disco: só o Content-Type pela extensão.
+     *
+     * @param nomeArquivo O nome do arquivo.
+     * @return Os metadados, com tamanho, dimensões e duração nulos.
+     */
+    public Metadados semArquivo(String nomeArquivo) {
+        return new Metadados(detectarContentType(extensao(nomeArquivo)), null, null, null, null);
+    }
+
+    /**
+     * Content-Type pela extensão do nome, só com a tabela em memória (sem sondar o disco).
+     *
+     * @param nomeArquivo O nome do arquivo.
+     * @return O MIME type, ou application/octet-stream se a extensão for desconhecida.
+     */
+    public static String contentTypePorExtensao(String nomeArquivo) {
+        return TIPOS_POR_EXTENSAO.getOrDefault(extensao(nomeArquivo), MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    // Tabela conhecida primeiro; pra extensões fora dela pergunta ao sistema, uma vez só no upload
+    private static String detectarContentType(String extensao) {
+        String conhecido = TIPOS_POR_EXTENSAO.get(extensao);
+        if (conhecido != null) {
+            return conhecido;
+        }
+        if (extensao.matches("[a-z0-9]{1,10}")) {
+            try {
+                String sondado = Files.probeContentType(Paths.get("arquivo." + extensao));
+                if (sondado != null) {
+                    return sondado;
+                }
+            } catch (IOException | InvalidPathException e) {
+                // Fica no genérico
+            }
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    // Só o cabeçalho: o ImageReader sabe largura e altura sem decodificar os pixels
+    private static int[] lerDimensoes(Path arquivo) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(arquivo.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> leitores = ImageIO.getImageReaders(in);
+            if (!leitores.hasNext()) {
+                return null;
+            }
+            ImageReader leitor = leitores.next();
+            try {
+                leitor.setInput(in, true, true);
+                return new int[]{leitor.getWidth(0), leitor.getHeight(0)};
+            } finally {
+                leitor.dispose();
+            }
+        }
+    }
+
+    private static Long duracaoAudioPcm(Path arquivo) throws IOException {
+        try {
+            AudioFileFormat formato = AudioSystem.getAudioFileFormat(arquivo.toFile());
+            float quadrosPorSegundo = formato.getFormat().getFrameRate();
+            if (formato.getFrameLength() <= 0 || quadrosPorSegundo <= 0) {
+                return null;
+            }
+            return (long) (formato.getFrameLength() * 1000L / quadrosPorSegundo);
+        } catch (UnsupportedAudioFileException e) {
+            return null;
+        }
+    }
+
+    private static Long duracaoMp4(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            return procurarMvhd(canal, 0, canal.size(), false);
+        }
+    }
+
+    /**
+     * Percorre as caixas (tamanho + tipo) até achar moov/mvhd, pulando o resto sem ler
+     * (o mdat pode ter gigas e vir antes ou depois do moov).
+     */
+    private static Long procurarMvhd(FileChannel canal, long inicio, long fim, boolean dentroDoMoov) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(16);
+        long posicao = inicio;
+        while (posicao + 8 <= fim) {
+            cabecalho.clear().limit(8);
+            ler(canal, cabecalho, posicao);
+            long tamanho = Integer.toUnsignedLong(cabecalho.getInt(0));
+            String tipo = new String(cabecalho.array(), 4, 4, StandardCharsets.US_ASCII);
+            int tamanhoCabecalho = 8;
+            if (tamanho == 1) {
+                // Tamanho de 64 bits logo depois do tipo
+                cabecalho.clear().limit(8);
+                ler(canal, cabecalho, posicao + 8);
+                tamanho = cabecalho.getLong(0);
+                tamanhoCabecalho = 16;
+            } else if (tamanho == 0) {
+                tamanho = fim - posicao; // Vai até o fim do arquivo
+            }
+            if (tamanho < tamanhoCabecalho) {
+                return null; // Corrompido
+            }
+
+            if (!dentroDoMoov && "moov".equals(tipo)) {
+                return procurarMvhd(canal, posicao + tamanhoCabecalho, posicao + tamanho, true);
+            }
+            if (dentroDoMoov && "mvhd".equals(tipo)) {
+                return lerMvhd(canal, posicao + tamanhoCabecalho);
+            }
+            posicao += tamanho;
+        }
+        return null;
+    }
+
+    private static Long lerMvhd(FileChannel canal, long posicao) throws IOException {
+        ByteBuffer corpo = ByteBuffer.allocate(32);
+        ler(canal, corpo, posicao);
+        int versao = corpo.get(0) & 0xff;
+        long escala;
+        long duracao;
+        if (versao == 1) {
+            // versão/flags (4), criação (8), modificação (8), escala (4), duração (8)
+            escala = Integer.toUnsignedLong(corpo.getInt(20));
+            duracao = corpo.getLong(24);
+        } else {
+            // versão/flags (4), criação (4), modificação (4), escala (4), duração (4)
+            escala = Integer.toUnsignedLong(corpo.getInt(12));
+            duracao = Integer.toUnsignedLong(corpo.getInt(16));
+        }
+        return escala > 0 && duracao >= 0 ? duracao * 1000 / escala : null;
+    }
+
+    private static void ler(FileChannel canal, ByteBuffer destino, long posicao) throws IOException {
+        while (destino.hasRemaining()) {
+            int lidos = canal.read(destino, posicao + destino.position());
+            if (lidos < 0) {
+                throw new EOFException("Fim do arquivo no meio de uma caixa");
+            }
+        }
+    }
+
+    private static String extensao(String nomeArquivo) {
+        if (nomeArquivo == null) {
+            return "";
+        }
+        int ponto = nomeArquivo.lastIndexOf('.');
+        return ponto >= 0 ? nomeArquivo.substring(ponto + 1).toLowerCase() : "";
+    }
+
+    /**
+     * Metadados lidos de um arquivo. Campos que não se aplicam ou não deram pra ler ficam nulos.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Metadados {
+        private final String contentType;
+        private final Long tamanhoBytes;
+        private final Integer largura;
+        private final Integer altura;
+        private final Long duracaoMs;
+
+        /**
+         * Copia os metadados pra mídia.
+         *
+         * @param midia A mídia a preencher.
+         */
+        public void aplicar(MidiaEntrada midia) {
+            midia.setContentType(contentType);
+            midia.setTamanhoBytes(tamanhoBytes);
+            midia.setLargura(largura);
+            midia.setAltura(altura);
+            midia.setDuracaoMs(duracaoMs);
+        }
+    }
+}
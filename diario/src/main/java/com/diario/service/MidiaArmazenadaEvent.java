@@ -0,0 +1,15 @@
+package com.diario.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Publicado quando um arquivo de mídia é confirmado no armazenamento.
+ * Os ouvintes que rodam depois do commit (ex: geração de miniaturas) usam isso pra trabalhar em segundo plano.
+ */
+@Getter
+@AllArgsConstructor
+public class MidiaArmazenadaEvent {
+    private final String hashConteudo;
+    private final String nomeArquivo;
+}
@@ -0,0 +1,14 @@
+package com.diario.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Publicado quando uma mídia é removida. Depois do commit o nome público dela deixa de ser servido,
+ * mesmo que o arquivo continue no disco por causa de outras mídias com o mesmo conteúdo.
+ */
+@Getter
+@AllArgsConstructor
+public class MidiaRemovidaEvent {
+    private final String nomePublico;
+}
@@ -0,0 +1,209 @@
+package com.diario.service;
+
+import com.diario.model.MidiaEntrada;
+import com.diario.repository.MidiaEntradaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migra a pasta de upload do layout antigo (tudo solto na raiz) pro layout em subpastas (ab/cd/nome),
+ * em segundo plano e com a aplicação no ar. O getArquivo acha o arquivo nos dois lugares enquanto isso.
+ *
+ * Duas fases, as duas podem ser interrompidas e retomadas:
+ * 1. Move os arquivos da raiz pras subpastas, em lotes. O que já saiu da raiz não é visto de novo.
+ * 2. Corrige midia_entrada.caminho_arquivo percorrendo a tabela por ID. O último ID processado
+ *    fica gravado num arquivo de controle na pasta de upload, e a próxima execução continua dali.
+ */
+@Service
+public class MigracaoArmazenamentoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigracaoArmazenamentoService.class);
+
+    private static final String ARQUIVO_CONTROLE = ".migracao-pastas";
+    private static final String CONCLUIDA = "concluida";
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private VersaoDiarioService versaoDiarioService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${file.migracao-pastas.habilitada:true}")
+    private boolean habilitada;
+
+    @Value("${file.migracao-pastas.lote:500}")
+    private int tamanhoLote;
+
+    // Pausa entre lotes pra migração não disputar disco e banco com as requisições
+    @Value("${file.migracao-pastas.pausa-ms:200}")
+    private long pausaEntreLotes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarEmSegundoPlano() {
+        if (!habilitada) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                migrar();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Migração das pastas de upload parou, continua no próximo start: {}", e.getMessage(), e);
+            }
+        }, "migracao-pastas");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Roda as duas fases da migração até o fim.
+     *
+     * @throws IOException          Se der erro lendo a pasta de upload ou o arquivo de controle.
+     * @throws InterruptedException Se a thread for interrompida entre lotes.
+     */
+    public void migrar() throws IOException, InterruptedException {
+        Path controle = armazenamentoMidiaService.getDiretorioUpload().resolve(ARQUIVO_CONTROLE);
+        String estado = Files.exists(controle) ? Files.readString(controle, StandardCharsets.UTF_8).trim() : "0";
+        if (CONCLUIDA.equals(estado)) {
+            return;
+        }
+
+        int movidos = moverArquivosDaRaiz();
+        long atualizadas = atualizarCaminhos(controle, Long.parseLong(estado));
+
+        Files.writeString(controle, CONCLUIDA, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        logger.info("Migração das pastas de upload concluída: {} arquivos movidos, {} mídias atualizadas", movidos, atualizadas);
+    }
+
+    /**
+     * Diz se a migração já terminou, ou seja, se todo caminho_arquivo de um arquivo que existe
+     * já está no formato de {@link ArmazenamentoMidiaService#resolverCaminho(String)}.
+     *
+     * @return true se o arquivo de controle marca a migração como concluída.
+     */
+    public boolean isConcluida() {
+        Path controle = armazenamentoMidiaService.getDiretorioUpload().resolve(ARQUIVO_CONTROLE);
+        try {
+            return Files.exists(controle) && CONCLUIDA.equals(Files.readString(controle, StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Fase 1: lê a raiz em streaming (sem montar a lista inteira) e move lote por lote
+    private int moverArquivosDaRaiz() throws IOException, InterruptedException {
+        int movidos = 0;
+        List<Path> lote = new ArrayList<>(tamanhoLote);
+        try (DirectoryStream<Path> raiz = Files.newDirectoryStream(armazenamentoMidiaService.getDiretorioUpload(),
+                caminho -> Files.isRegularFile(caminho)
+                        && ArmazenamentoMidiaService.nomeValido(caminho.getFileName().toString()))) {
+            for (Path arquivo : raiz) {
+                lote.add(arquivo);
+                if (lote.size() == tamanhoLote) {
+                    movidos += moverLote(lote);
+                    lote.clear();
+                    Thread.sleep(pausaEntreLotes);
+                }
+            }
+        }
+        return movidos + moverLote(lote);
+    }
+
+    private int moverLote(List<Path> lote) {
+        int movidos = 0;
+        for (Path origem : lote) {
+            try {
+                Path destino = armazenamentoMidiaService.prepararCaminho(origem.getFileName().toString());
+                try {
+                    Files.move(origem, destino);
+                } catch (FileAlreadyExistsException e) {
+                    // Mesmo nome já na subpasta = mesmo conteúdo (hash ou UUID); a cópia da raiz sobra
+                    Files.delete(origem);
+                }
+                movidos++;
+            } catch (IOException e) {
+                logger.warn("Não foi possível mover {} pra subpasta: {}", origem, e.getMessage());
+            }
+        }
+        return movidos;
+    }
+
+    // Fase 2: percorre midia_entrada por ID, um lote por transação, salvando o progresso entre lotes
+    private long atualizarCaminhos(Path controle, long ultimoId) throws IOException, InterruptedException {
+        long atualizadas = 0;
+        while (true) {
+            long inicio = ultimoId;
+            Long[] resultado = transactionTemplate.execute(status -> {
+                List<MidiaEntrada> lote = midiaEntradaRepository.findByIdGreaterThanOrderByIdAsc(inicio, PageRequest.of(0, tamanhoLote));
+                List<MidiaEntrada> mover = new ArrayList<>();
+                List<String> novosCaminhos = new ArrayList<>();
+                for (MidiaEntrada midia : lote) {
+                    String novoCaminho = caminhoNovo(midia.getCaminhoArquivo());
+                    if (novoCaminho != null && !novoCaminho.equals(midia.getCaminhoArquivo())) {
+                        mover.add(midia);
+                        novosCaminhos.add(novoCaminho);
+                    }
+                }
+                // ETag e cache dos donos mudam junto; a versão é travada antes das mídias, na ordem das gravações comuns
+                versaoDiarioService.incrementarDonosDasMidias(mover.stream().map(MidiaEntrada::getId).toList());
+                long alteradas = 0;
+                for (int i = 0; i < mover.size(); i++) {
+                    // Só o caminho, e só se ainda for o lido: o preenchimento de metadados grava as outras colunas
+                    // ao mesmo tempo, e mídia apagada no meio do lote só não é atualizada
+                    MidiaEntrada midia = mover.get(i);
+                    alteradas += midiaEntradaRepository.trocarCaminho(midia.getId(), midia.getCaminhoArquivo(), novosCaminhos.get(i));
+                }
+                return new Long[]{lote.isEmpty() ? null : lote.get(lote.size() - 1).getId(), alteradas};
+            });
+
+            if (resultado == null || resultado[0] == null) {
+                return atualizadas;
+            }
+            ultimoId = resultado[0];
+            atualizadas += resultado[1];
+            Files.writeString(controle, Long.toString(ultimoId), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            Thread.sleep(pausaEntreLotes);
+        }
+    }
+
+    /**
+     * Caminho no layout novo pro arquivo gravado na linha, ou nulo se o arquivo não está nas subpastas
+     * (não foi movido, ou some de vez), caso em que a linha fica como está.
+     */
+    private String caminhoNovo(String caminhoGravado) {
+        String nome = ArmazenamentoMidiaService.nomeDoCaminho(caminhoGravado);
+        if (!ArmazenamentoMidiaService.nomeValido(nome)) {
+            return null;
+        }
+        Path novo = armazenamentoMidiaService.resolverCaminho(nome);
+        return Files.exists(novo) && !Paths.get(caminhoGravado).equals(novo) ? novo.toString() : null;
+    }
+}
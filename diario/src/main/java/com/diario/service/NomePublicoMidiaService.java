@@ -0,0 +1,88 @@
+package com.diario.service;
+
+import com.diario.repository.MidiaEntradaRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Traduz o nome público de uma mídia (o que vai na URL de /api/entradas/arquivo) pro arquivo no armazenamento.
+ *
+ * No disco o arquivo tem o nome do SHA-256 do conteúdo e é compartilhado entre usuários; se esse nome fosse
+ * a URL, quem tivesse uma cópia do arquivo calcularia o endereço e baixaria a de qualquer um. Por isso cada
+ * mídia tem um nome próprio, aleatório, e só aqui ele vira o nome do hash.
+ *
+ * A rota é pública e recebe muita requisição repetida (Range, 304), então a tradução fica num cache junto
+ * com o Content-Type gravado na mídia (inclusive os nomes que não existem, pra sondagem não virar consulta
+ * no banco). Mídia removida sai do cache depois do commit.
+ */
+@Service
+public class NomePublicoMidiaService {
+
+    private static final String NOME_CACHE = "nomes-publicos-midia";
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${midia.nomes-publicos.cache.tamanho-maximo:50000}")
+    private long tamanhoMaximoCache;
+
+    @Value("${midia.nomes-publicos.cache.expiracao-segundos:600}")
+    private long expiracaoCacheSegundos;
+
+    private Cache<String, Optional<MidiaPublica>> nomes;
+
+    @PostConstruct
+    void iniciarCache() {
+        nomes = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximoCache)
+                .expireAfterWrite(Duration.ofSeconds(expiracaoCacheSegundos))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nomes, NOME_CACHE);
+    }
+
+    /**
+     * Arquivo no armazenamento e Content-Type de uma mídia.
+     *
+     * @param nomePublico O nome público da mídia.
+     * @return O arquivo da mídia, ou vazio se nenhuma mídia tem esse nome.
+     */
+    public Optional<MidiaPublica> buscar(String nomePublico) {
+        if (!ArmazenamentoMidiaService.nomeValido(nomePublico)) {
+            return Optional.empty();
+        }
+        return nomes.get(nomePublico, nome -> midiaEntradaRepository.findArquivoPorNomePublico(nome).stream()
+                .findFirst()
+                .map(linha -> new MidiaPublica(ArmazenamentoMidiaService.nomeDoCaminho((String) linha[0]), (String) linha[1])));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void aoRemoverMidia(MidiaRemovidaEvent evento) {
+        if (evento.getNomePublico() != null) {
+            nomes.invalidate(evento.getNomePublico());
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class MidiaPublica {
+        private final String nomeArquivo; // Nome no armazenamento (sem pastas)
+        private final String contentType; // Nulo em mídia antiga ainda sem metadados
+    }
+}
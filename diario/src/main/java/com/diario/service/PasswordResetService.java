@@ -7,9 +7,9 @@ import com.diario.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -28,7 +28,13 @@ public class PasswordResetService {
     private JavaMailSender mailSender;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private HashSenhaService hashSenhaService;
+
+    @Autowired
+    private SessaoLoginService sessaoLoginService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     @Transactional
     public void solicitarResetDeSenha(String email) {
@@ -62,8 +68,33 @@ public class PasswordResetService {
         // Se o e-mail não existir não dá erro nenhum por segurança e pra não alertar os gansos
     }
 
-    @Transactional
+    /**
+     * Troca a senha de quem tem um token de redefinição válido.
+     * O token é conferido antes do hash (token inválido não gasta BCrypt) e o hash roda fora de transação,
+     * pra não segurar conexão do banco enquanto espera o executor; a gravação confere o token de novo,
+     * já que outra requisição pode ter usado ele nesse meio tempo.
+     * Todas as sessões abertas do usuário caem junto: quem tinha um refresh token vazado perde o acesso.
+     *
+     * @param token     O token recebido por e-mail.
+     * @param novaSenha A nova senha em texto.
+     * @throws IllegalArgumentException se o token for inválido ou expirou.
+     * @throws java.util.concurrent.RejectedExecutionException se os hashes estão sobrecarregados (responder 503).
+     */
     public void redefinirSenha(String token, String novaSenha) {
+        tokenValido(token);
+        String hash = hashSenhaService.codificar(novaSenha);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            PasswordResetToken resetToken = tokenValido(token);
+            Usuario usuario = resetToken.getUsuario();
+            usuario.setSenha(hash);
+            usuarioRepository.save(usuario);
+            tokenRepository.delete(resetToken); // Invalida o token após uso
+            sessaoLoginService.encerrarTodas(usuario.getId());
+        });
+    }
+
+    private PasswordResetToken tokenValido(String token) {
         Optional<PasswordResetToken> tokenOpt = tokenRepository.findByToken(token);
 
         if (tokenOpt.isEmpty()) {
@@ -76,10 +107,6 @@ public class PasswordResetService {
             tokenRepository.delete(resetToken); // Remove token expirado
             throw new IllegalArgumentException("Token expirado.");
         }
-
-        Usuario usuario = resetToken.getUsuario();
-        usuario.setSenha(passwordEncoder.encode(novaSenha));
-        usuarioRepository.save(usuario);
-        tokenRepository.delete(resetToken); // Invalida o token após uso
+        return resetToken;
     }
 }
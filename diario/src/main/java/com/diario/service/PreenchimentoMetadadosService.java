@@ -0,0 +1,126 @@
+package com.diario.service;
+
+import com.diario.model.MidiaEntrada;
+import com.diario.repository.MidiaEntradaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Preenche em segundo plano os metadados (tipo, tamanho, dimensões, duração) das mídias
+ * gravadas antes de eles serem lidos no upload. Enquanto isso o getArquivo usa a tabela de extensões.
+ *
+ * Percorre só as linhas com content_type nulo, por ID; toda linha visitada sai com content_type
+ * preenchido (mesmo sem arquivo no disco), então a próxima execução não vê as mesmas de novo.
+ */
+@Service
+public class PreenchimentoMetadadosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreenchimentoMetadadosService.class);
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private MetadadosMidiaService metadadosMidiaService;
+
+    @Autowired
+    private VersaoDiarioService versaoDiarioService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${midia.metadados.preenchimento.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${midia.metadados.preenchimento.lote:200}")
+    private int tamanhoLote;
+
+    @Value("${midia.metadados.preenchimento.pausa-ms:200}")
+    private long pausaEntreLotes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarEmSegundoPlano() {
+        if (!habilitado) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                preencher();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Preenchimento dos metadados das mídias parou, continua no próximo start: {}", e.getMessage(), e);
+            }
+        }, "preenchimento-metadados");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Preenche todas as mídias sem metadados, um lote por transação.
+     * Os arquivos são lidos antes de abrir a transação, pra não segurar conexão durante o I/O.
+     *
+     * @return Quantas mídias foram preenchidas.
+     * @throws InterruptedException Se a thread for interrompida entre lotes.
+     */
+    public long preencher() throws InterruptedException {
+        long ultimoId = 0;
+        long preenchidas = 0;
+        while (true) {
+            List<MidiaEntrada> lote = midiaEntradaRepository.findByIdGreaterThanAndContentTypeIsNullOrderByIdAsc(
+                    ultimoId, PageRequest.of(0, tamanhoLote));
+            if (lote.isEmpty()) {
+                break;
+            }
+            ultimoId = lote.get(lote.size() - 1).getId();
+
+            // Mídias deduplicadas apontam pro mesmo arquivo: lê uma vez só por caminho
+            Map<String, MetadadosMidiaService.Metadados> porCaminho = new HashMap<>();
+            Map<Long, MetadadosMidiaService.Metadados> porId = new HashMap<>();
+            for (MidiaEntrada midia : lote) {
+                porId.put(midia.getId(), porCaminho.computeIfAbsent(midia.getCaminhoArquivo(), this::lerMetadados));
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                // ETag e cache dos donos mudam junto; a versão é travada antes das mídias, na ordem das gravações comuns
+                versaoDiarioService.incrementarDonosDasMidias(porId.keySet());
+                // Só as colunas de metadados, e só onde ainda estão vazias: a migração de pastas troca o caminho
+                // ao mesmo tempo, e mídia apagada no meio do lote só não é atualizada
+                porId.forEach((id, metadados) -> midiaEntradaRepository.preencherMetadados(id, metadados.getContentType(),
+                        metadados.getTamanhoBytes(), metadados.getLargura(), metadados.getAltura(), metadados.getDuracaoMs()));
+            });
+            preenchidas += lote.size();
+            Thread.sleep(pausaEntreLotes);
+        }
+
+        if (preenchidas > 0) {
+            logger.info("Metadados preenchidos em {} mídias antigas", preenchidas);
+        }
+        return preenchidas;
+    }
+
+    private MetadadosMidiaService.Metadados lerMetadados(String caminhoGravado) {
+        String nome = ArmazenamentoMidiaService.nomeDoCaminho(caminhoGravado);
+        Optional<ArmazenamentoMidiaService.ArquivoLocalizado> localizado = armazenamentoMidiaService.localizar(nome);
+        if (localizado.isEmpty()) {
+            return metadadosMidiaService.semArquivo(nome);
+        }
+        return metadadosMidiaService.extrair(localizado.get().getCaminho(), nome, localizado.get().getAtributos().size());
+    }
+}
@@ -0,0 +1,8 @@
+package com.diario.service;
+
+/**
+ * Publicado quando a transação agenda arquivos pra apagar. Depois do commit acorda o worker de remoção,
+ * em vez de esperar a próxima varredura.
+ */
+public class RemocaoArquivoAgendadaEvent {
+}
@@ -0,0 +1,335 @@
+package com.diario.service;
+
+import com.diario.model.RemocaoArquivoPendente;
+import com.diario.repository.ArquivoMidiaRepository;
+import com.diario.repository.MidiaEntradaRepository;
+import com.diario.repository.RemocaoArquivoPendenteRepository;
+import com.diario.repository.VarianteMidiaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Apaga os arquivos físicos fora da transação que removeu a mídia.
+ *
+ * A remoção de uma mídia só grava linhas em remocao_arquivo_pendente (outbox); depois do commit
+ * um worker de uma thread só drena a fila, conferindo de novo se o arquivo não voltou a ser usado
+ * antes de apagar. Falha de disco não perde o arquivo: a linha fica e é tentada de novo mais tarde.
+ *
+ * Uma varredura periódica percorre a pasta de upload em lotes e agenda na mesma fila os arquivos
+ * que não são de nenhum registro (sobras de crash, de versões antigas, de deleções que falharam antes do outbox).
+ */
+@Service
+public class RemocaoArquivoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemocaoArquivoService.class);
+
+    // Teto da espera entre tentativas de um arquivo que não sai (1 dia)
+    private static final long ESPERA_MAXIMA_MINUTOS = 24 * 60;
+
+    @Autowired
+    private RemocaoArquivoPendenteRepository remocaoArquivoPendenteRepository;
+
+    @Autowired
+    private ArquivoMidiaRepository arquivoMidiaRepository;
+
+    @Autowired
+    private VarianteMidiaRepository varianteMidiaRepository;
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private MigracaoArmazenamentoService migracaoArmazenamentoService;
+
+    @Autowired
+    private CacheMidiaService cacheMidiaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${file.remocao.lote:100}")
+    private int tamanhoLote;
+
+    @Value("${file.orfaos.habilitada:true}")
+    private boolean varreduraHabilitada;
+
+    @Value("${file.orfaos.lote:500}")
+    private int tamanhoLoteOrfaos;
+
+    // Arquivo mais novo que isso pode ser de uma transação que ainda não fez commit
+    @Value("${file.orfaos.idade-minima-horas:24}")
+    private long idadeMinimaHoras;
+
+    @Value("${file.orfaos.pausa-ms:200}")
+    private long pausaEntreLotes;
+
+    // Uma thread só: drenagem e varredura nunca rodam ao mesmo tempo
+    private ThreadPoolExecutor executor;
+
+    private final AtomicBoolean drenagemAgendada = new AtomicBoolean();
+    private final AtomicBoolean varreduraAgendada = new AtomicBoolean();
+
+    @PostConstruct
+    void iniciarExecutor() {
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                tarefa -> {
+                    Thread thread = new Thread(tarefa, "remocao-arquivos");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void encerrarExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Acorda o worker depois que a transação que agendou remoções fez commit.
+     * Se a transação voltar, o evento nunca chega e as linhas da fila somem junto com ela.
+     *
+     * @param evento O aviso de que tem arquivo na fila.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void aoAgendarRemocao(RemocaoArquivoAgendadaEvent evento) {
+        agendarDrenagem();
+    }
+
+    /**
+     * Rede de segurança: pega o que ficou pra trás (restart, falhas aguardando nova tentativa).
+     */
+    @Scheduled(fixedDelayString = "${file.remocao.varredura-ms:60000}")
+    public void drenarPeriodicamente() {
+        agendarDrenagem();
+    }
+
+    /**
+     * Agenda a varredura de arquivos órfãos na thread do worker, sem segurar a thread do agendador.
+     */
+    @Scheduled(initialDelayString = "${file.orfaos.atraso-inicial-ms:600000}",
+            fixedDelayString = "${file.orfaos.varredura-ms:86400000}")
+    public void agendarVarreduraOrfaos() {
+        if (varreduraHabilitada && varreduraAgendada.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    varrerOrfaos();
+                } finally {
+                    varreduraAgendada.set(false);
+                }
+            });
+        }
+    }
+
+    private void agendarDrenagem() {
+        if (drenagemAgendada.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                // Libera antes de começar: o que for agendado durante a drenagem ganha outra rodada
+                drenagemAgendada.set(false);
+                drenar();
+            });
+        }
+    }
+
+    /**
+     * Processa a fila até não sobrar nada vencido. Os que falham são reagendados pra frente,
+     * então saem da consulta e o laço termina.
+     */
+    public void drenar() {
+        try {
+            while (true) {
+                List<RemocaoArquivoPendente> lote = remocaoArquivoPendenteRepository
+                        .findByProximaTentativaLessThanEqualOrderByIdAsc(LocalDateTime.now(), PageRequest.of(0, tamanhoLote));
+                if (lote.isEmpty()) {
+                    return;
+                }
+                lote.forEach(this::processar);
+            }
+        } catch (RuntimeException e) {
+            // Banco fora do ar, por exemplo; a próxima rodada periódica tenta de novo
+            logger.error("Drenagem da fila de remoção de arquivos interrompida: {}", e.getMessage(), e);
+        }
+    }
+
+    private void processar(RemocaoArquivoPendente remocao) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!emUso(remocao)) {
+                    try {
+                        apagar(remocao);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                remocaoArquivoPendenteRepository.deleteById(remocao.getId());
+            });
+        } catch (UncheckedIOException e) {
+            int tentativas = remocao.getTentativas() + 1;
+            long esperaMinutos = Math.min(ESPERA_MAXIMA_MINUTOS, 1L << Math.min(tentativas, 20));
+            remocao.setTentativas(tentativas);
+            remocao.setProximaTentativa(LocalDateTime.now().plusMinutes(esperaMinutos));
+            remocaoArquivoPendenteRepository.save(remocao);
+            logger.warn("Não foi possível apagar {} (tentativa {}), nova tentativa em {} min: {}",
+                    descrever(remocao), tentativas, esperaMinutos, e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Confere, dentro da transação do worker, se o arquivo voltou a ser usado depois de agendado
+     * (ex: o mesmo conteúdo enviado de novo). A leitura com trava na linha do hash em arquivo_midia
+     * faz um upload do mesmo conteúdo esperar o arquivo ser apagado, ou o worker esperar o upload
+     * terminar e ver o registro novo.
+     */
+    private boolean emUso(RemocaoArquivoPendente remocao) {
+        if (remocao.getCaminhoArquivo() != null) {
+            return !midiaEntradaRepository.findCaminhosRegistrados(List.of(remocao.getCaminhoArquivo())).isEmpty();
+        }
+
+        String nome = remocao.getNomeArquivo();
+        if (nome.length() >= 64 && nome.substring(0, 64).matches("[0-9a-f]{64}")) {
+            arquivoMidiaRepository.findByHashParaAtualizacao(nome.substring(0, 64));
+        }
+        return !nomesEmUso(List.of(nome)).isEmpty();
+    }
+
+    private void apagar(RemocaoArquivoPendente remocao) throws IOException {
+        if (remocao.getCaminhoArquivo() != null) {
+            Files.deleteIfExists(Paths.get(remocao.getCaminhoArquivo()));
+            cacheMidiaService.invalidar(ArmazenamentoMidiaService.nomeDoCaminho(remocao.getCaminhoArquivo()));
+        } else {
+            armazenamentoMidiaService.apagarArquivo(remocao.getNomeArquivo());
+            // Depois de apagar: uma carga do cache em andamento termina antes e é descartada aqui
+            cacheMidiaService.invalidar(remocao.getNomeArquivo());
+        }
+    }
+
+    /**
+     * Dos nomes dados, os que ainda pertencem a algum registro: arquivo original, variante,
+     * ou caminho gravado numa mídia antiga (no layout em subpastas ou na raiz).
+     */
+    private Set<String> nomesEmUso(Collection<String> nomes) {
+        Set<String> emUso = new HashSet<>(arquivoMidiaRepository.findNomesRegistrados(nomes));
+        emUso.addAll(varianteMidiaRepository.findNomesRegistrados(nomes));
+
+        Map<String, String> nomePorCaminho = new HashMap<>();
+        for (String nome : nomes) {
+            nomePorCaminho.put(armazenamentoMidiaService.resolverCaminho(nome).toString(), nome);
+            nomePorCaminho.put(armazenamentoMidiaService.resolverCaminhoLegado(nome).toString(), nome);
+        }
+        for (String caminho : midiaEntradaRepository.findCaminhosRegistrados(nomePorCaminho.keySet())) {
+            emUso.add(nomePorCaminho.get(caminho));
+        }
+        return emUso;
+    }
+
+    /**
+     * Percorre a pasta de upload em streaming (sem listar tudo na memória) e agenda a remoção
+     * dos arquivos que nenhum registro conhece. Só roda com a migração pra subpastas concluída,
+     * porque antes disso caminho_arquivo das mídias antigas pode estar num formato que não bate.
+     */
+    public void varrerOrfaos() {
+        if (!migracaoArmazenamentoService.isConcluida()) {
+            logger.info("Varredura de órfãos adiada: migração das pastas de upload ainda não terminou");
+            return;
+        }
+
+        Path raiz = armazenamentoMidiaService.getDiretorioUpload();
+        Instant limite = Instant.now().minus(idadeMinimaHoras, ChronoUnit.HOURS);
+        int agendados = 0;
+        List<String> lote = new ArrayList<>(tamanhoLoteOrfaos);
+
+        // Profundidade 3: raiz/ab/cd/nome; pastas começando com ponto (.tmp) ficam de fora
+        try (Stream<Path> caminhos = Files.walk(raiz, 3)) {
+            Iterator<Path> arquivos = caminhos
+                    .filter(caminho -> !caminho.equals(raiz) && !raiz.relativize(caminho).getName(0).toString().startsWith("."))
+                    .filter(Files::isRegularFile)
+                    .iterator();
+            while (arquivos.hasNext()) {
+                Path arquivo = arquivos.next();
+                String nome = arquivo.getFileName().toString();
+                if (!ArmazenamentoMidiaService.nomeValido(nome) || !maisAntigoQue(arquivo, limite)) {
+                    continue;
+                }
+                lote.add(nome);
+                if (lote.size() == tamanhoLoteOrfaos) {
+                    agendados += agendarOrfaos(lote);
+                    lote.clear();
+                    Thread.sleep(pausaEntreLotes);
+                }
+            }
+            agendados += agendarOrfaos(lote);
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Varredura de órfãos interrompida: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (agendados > 0) {
+            logger.info("Varredura de órfãos agendou {} arquivos pra remoção", agendados);
+            drenar();
+        }
+    }
+
+    private int agendarOrfaos(List<String> lote) {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        Set<String> emUso = nomesEmUso(lote);
+        List<RemocaoArquivoPendente> orfaos = lote.stream()
+                .distinct() // O mesmo nome pode estar na raiz e na subpasta
+                .filter(nome -> !emUso.contains(nome))
+                .map(RemocaoArquivoPendente::doArmazenamento)
+                .toList();
+        remocaoArquivoPendenteRepository.saveAll(orfaos);
+        return orfaos.size();
+    }
+
+    private static boolean maisAntigoQue(Path arquivo, Instant limite) {
+        try {
+            return Files.getLastModifiedTime(arquivo).toInstant().isBefore(limite);
+        } catch (IOException e) {
+            return false; // Sumiu no meio da varredura
+        }
+    }
+
+    private static String descrever(RemocaoArquivoPendente remocao) {
+        return remocao.getCaminhoArquivo() != null ? remocao.getCaminhoArquivo() : remocao.getNomeArquivo();
+    }
+}
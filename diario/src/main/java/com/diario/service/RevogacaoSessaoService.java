@@ -0,0 +1,130 @@
+package com.diario.service;
+
+import com.diario.repository.SessaoLoginRepository;
+import com.diario.util.FiltroBloom;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessões de login revogadas, em memória, pro filtro JWT recusar os tokens de acesso delas sem ir no banco.
+ *
+ * Só interessam as sessões revogadas há menos tempo que a validade de um token de acesso (as mais antigas
+ * não têm mais token valendo), então o conjunto fica pequeno. Na frente dele vai um filtro de Bloom:
+ * quase toda requisição é de sessão não revogada e sai dali com algumas leituras de bits; só um "talvez"
+ * confere no conjunto exato, que elimina os falsos positivos.
+ *
+ * O conjunto é remontado do banco de tempos em tempos (auth.revogacao.recarga-ms), o que traz as revogações
+ * feitas por outras instâncias; as desta instância entram na hora, depois do commit.
+ */
+@Service
+public class RevogacaoSessaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevogacaoSessaoService.class);
+
+    // Mínimo de lugares no filtro, pra comportar as revogações que entram entre uma recarga e outra
+    private static final int CAPACIDADE_MINIMA = 1024;
+
+    @Autowired
+    private SessaoLoginRepository sessaoLoginRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${auth.jwt.acesso-minutos:15}")
+    private long acessoMinutos;
+
+    @Value("${auth.revogacao.falso-positivo:0.01}")
+    private double falsoPositivo;
+
+    private volatile Revogadas revogadas;
+
+    @PostConstruct
+    void iniciar() {
+        revogadas = new Revogadas(CAPACIDADE_MINIMA, falsoPositivo);
+        recarregar();
+        Gauge.builder("auth.revogacao.sessoes", this, servico -> servico.revogadas.exatas.size())
+                .description("Sessões revogadas no filtro em memória")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Se os tokens de acesso dessa sessão foram revogados.
+     *
+     * @param sessaoId O ID da sessão (claim sid do token).
+     * @return true se a sessão foi revogada.
+     */
+    public boolean revogada(String sessaoId) {
+        Revogadas atual = revogadas;
+        return atual.filtro.talvezContem(sessaoId) && atual.exatas.containsKey(sessaoId);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void aoRevogarSessao(SessaoRevogadaEvent evento) {
+        adicionar(evento.getSessaoId(), evento.getRevogadaEm());
+    }
+
+    /**
+     * Remonta filtro e conjunto com as revogações recentes do banco.
+     */
+    @Scheduled(initialDelayString = "${auth.revogacao.recarga-ms:30000}", fixedDelayString = "${auth.revogacao.recarga-ms:30000}")
+    public void recarregar() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(acessoMinutos);
+        List<Object[]> doBanco;
+        try {
+            doBanco = sessaoLoginRepository.findRevogadasDesde(limite);
+        } catch (RuntimeException e) {
+            // Fica com o que já tinha; a próxima recarga tenta de novo
+            logger.error("Erro recarregando as sessões revogadas: {}", e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            Map<String, LocalDateTime> todas = new ConcurrentHashMap<>();
+            for (Object[] linha : doBanco) {
+                todas.put((String) linha[0], (LocalDateTime) linha[1]);
+            }
+            // As que entraram por evento depois da consulta ainda não estão no resultado
+            revogadas.exatas.forEach((id, quando) -> {
+                if (!quando.isBefore(limite)) {
+                    todas.putIfAbsent(id, quando);
+                }
+            });
+
+            Revogadas novas = new Revogadas(Math.max(CAPACIDADE_MINIMA, todas.size() * 2), falsoPositivo);
+            todas.forEach(novas::adicionar);
+            revogadas = novas;
+        }
+    }
+
+    private synchronized void adicionar(String sessaoId, LocalDateTime revogadaEm) {
+        revogadas.adicionar(sessaoId, revogadaEm);
+    }
+
+    private static class Revogadas {
+        private final FiltroBloom filtro;
+        private final Map<String, LocalDateTime> exatas = new ConcurrentHashMap<>();
+
+        Revogadas(int capacidade, double falsoPositivo) {
+            filtro = new FiltroBloom(capacidade, falsoPositivo);
+        }
+
+        void adicionar(String sessaoId, LocalDateTime revogadaEm) {
+            exatas.put(sessaoId, revogadaEm);
+            filtro.adicionar(sessaoId); // Depois do conjunto: quem passar pelo filtro já acha no conjunto
+        }
+    }
+}
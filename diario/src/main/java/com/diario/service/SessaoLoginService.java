@@ -0,0 +1,223 @@
+package com.diario.service;
+
+import com.diario.model.RefreshToken;
+import com.diario.model.SessaoLogin;
+import com.diario.model.Usuario;
+import com.diario.model.UsuarioDetails;
+import com.diario.repository.RefreshTokenRepository;
+import com.diario.repository.SessaoLoginRepository;
+import com.diario.repository.UsuarioRepository;
+import com.diario.util.JwtUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Sessões de login com refresh token rotativo.
+ *
+ * O login (com BCrypt) abre uma sessão e devolve um token de acesso curto (auth.jwt.acesso-minutos) e um
+ * refresh token. Quando o acesso expira, o cliente troca o refresh token por um par novo em POST /auth/refresh,
+ * sem senha nem BCrypt; o refresh token usado deixa de valer. Se um refresh token já trocado aparece de novo,
+ * alguém tem uma cópia: a sessão inteira é revogada, e os tokens de acesso dela param de valer na hora
+ * ({@link RevogacaoSessaoService}).
+ */
+@Service
+public class SessaoLoginService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessaoLoginService.class);
+
+    private static final int BYTES_REFRESH_TOKEN = 32;
+
+    @Autowired
+    private SessaoLoginRepository sessaoLoginRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${auth.jwt.acesso-minutos:15}")
+    private long acessoMinutos;
+
+    @Value("${auth.jwt.refresh-dias:30}")
+    private long refreshDias;
+
+    private final SecureRandom aleatorio = new SecureRandom();
+
+    /**
+     * Abre uma sessão pra um usuário que acabou de conferir a senha.
+     *
+     * @param usuario O usuário.
+     * @return Token de acesso e refresh token da nova sessão.
+     */
+    @Transactional
+    public Tokens abrir(Usuario usuario) {
+        LocalDateTime agora = LocalDateTime.now();
+        SessaoLogin sessao = new SessaoLogin();
+        sessao.setId(UUID.randomUUID().toString());
+        sessao.setUsuarioId(usuario.getId());
+        sessao.setCriadaEm(agora);
+        sessao.setExpiraEm(agora.plusDays(refreshDias));
+        sessaoLoginRepository.save(sessao);
+
+        return emitir(sessao, usuario, agora);
+    }
+
+    /**
+     * Troca um refresh token por um par novo. O token usado deixa de valer; se ele já tinha sido trocado antes,
+     * a sessão é revogada.
+     *
+     * @param refreshToken O refresh token recebido no login ou na última renovação.
+     * @return O par novo, ou vazio se o token é inválido, expirou, já foi usado ou a sessão foi revogada (responder 401).
+     */
+    @Transactional
+    public Optional<Tokens> renovar(String refreshToken) {
+        Optional<RefreshToken> encontrado = refreshTokenRepository.findByHashParaAtualizacao(resumo(refreshToken));
+        if (encontrado.isEmpty()) {
+            return Optional.empty();
+        }
+        RefreshToken atual = encontrado.get();
+        LocalDateTime agora = LocalDateTime.now();
+
+        Optional<SessaoLogin> sessaoOpt = sessaoLoginRepository.findById(atual.getSessaoId());
+        if (sessaoOpt.isEmpty() || sessaoOpt.get().getRevogadaEm() != null) {
+            return Optional.empty();
+        }
+        SessaoLogin sessao = sessaoOpt.get();
+
+        if (atual.getUsadoEm() != null) {
+            // Token já trocado usado de novo: o legítimo e o copiado não dá pra distinguir, então cai a sessão
+            logger.warn("Refresh token reaproveitado na sessão {} do usuário {}, sessão revogada", sessao.getId(), sessao.getUsuarioId());
+            revogar(sessao.getId(), agora);
+            return Optional.empty();
+        }
+        if (atual.getExpiraEm().isBefore(agora)) {
+            return Optional.empty();
+        }
+
+        Optional<Usuario> usuario = usuarioRepository.findById(sessao.getUsuarioId());
+        if (usuario.isEmpty()) {
+            return Optional.empty();
+        }
+
+        atual.setUsadoEm(agora);
+        sessao.setExpiraEm(agora.plusDays(refreshDias));
+        return Optional.of(emitir(sessao, usuario.get(), agora));
+    }
+
+    /**
+     * Logout: revoga a sessão do refresh token. Os tokens de acesso dela param de valer em todas as instâncias
+     * (nesta na hora, nas outras na próxima recarga das revogações).
+     *
+     * @param refreshToken Um refresh token da sessão (atual ou já trocado).
+     */
+    @Transactional
+    public void encerrar(String refreshToken) {
+        refreshTokenRepository.findByHashToken(resumo(refreshToken))
+                .ifPresent(token -> revogar(token.getSessaoId(), LocalDateTime.now()));
+    }
+
+    /**
+     * Revoga todas as sessões abertas de um usuário (ex: senha redefinida), com os tokens de acesso delas.
+     * Roda na transação de quem chamou, pra revogação e troca de senha entrarem juntas.
+     *
+     * @param usuarioId O usuário.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void encerrarTodas(Long usuarioId) {
+        LocalDateTime agora = LocalDateTime.now();
+        List<String> abertas = sessaoLoginRepository.findAbertasDoUsuario(usuarioId);
+        abertas.forEach(sessaoId -> revogar(sessaoId, agora));
+        if (!abertas.isEmpty()) {
+            logger.info("{} sessões do usuário {} revogadas", abertas.size(), usuarioId);
+        }
+    }
+
+    /**
+     * Descarta sessões vencidas (ou revogadas há mais tempo que a validade de um token de acesso) e os refresh tokens delas.
+     */
+    @Scheduled(initialDelayString = "${auth.sessoes.atraso-inicial-ms:600000}",
+            fixedDelayString = "${auth.sessoes.varredura-ms:3600000}")
+    public void descartarEncerradas() {
+        LocalDateTime agora = LocalDateTime.now();
+        Integer descartadas = transactionTemplate.execute(status -> {
+            int sessoes = sessaoLoginRepository.descartarEncerradas(agora, agora.minusMinutes(acessoMinutos));
+            refreshTokenRepository.descartarEncerrados(agora);
+            return sessoes;
+        });
+        if (descartadas != null && descartadas > 0) {
+            logger.info("{} sessões de login encerradas descartadas", descartadas);
+        }
+    }
+
+    private void revogar(String sessaoId, LocalDateTime agora) {
+        if (sessaoLoginRepository.revogar(sessaoId, agora) > 0) {
+            eventPublisher.publishEvent(new SessaoRevogadaEvent(sessaoId, agora));
+        }
+    }
+
+    private Tokens emitir(SessaoLogin sessao, Usuario usuario, LocalDateTime agora) {
+        byte[] bytes = new byte[BYTES_REFRESH_TOKEN];
+        aleatorio.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken novo = new RefreshToken();
+        novo.setSessaoId(sessao.getId());
+        novo.setHashToken(resumo(refreshToken));
+        novo.setCriadoEm(agora);
+        novo.setExpiraEm(agora.plusDays(refreshDias));
+        refreshTokenRepository.save(novo);
+
+        String acesso = jwtUtil.generateToken(new UsuarioDetails(usuario), sessao.getId());
+        return new Tokens(acesso, refreshToken, usuario.getId(), acessoMinutos * 60);
+    }
+
+    // Só o SHA-256 vai pro banco: quem ler a tabela não consegue renovar sessão de ninguém
+    private static String resumo(String refreshToken) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(refreshToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Tokens {
+        private final String token;
+        private final String refreshToken;
+        private final Long usuarioId;
+        private final long expiraEmSegundos;
+    }
+}
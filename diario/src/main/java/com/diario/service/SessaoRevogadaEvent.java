@@ -0,0 +1,17 @@
+package com.diario.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Publicado quando uma sessão de login é revogada (logout ou refresh token reaproveitado).
+ * Depois do commit a sessão entra no filtro de revogação em memória desta instância.
+ */
+@Getter
+@AllArgsConstructor
+public class SessaoRevogadaEvent {
+    private final String sessaoId;
+    private final LocalDateTime revogadaEm;
+}
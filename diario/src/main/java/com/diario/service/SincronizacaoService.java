@@ -0,0 +1,181 @@
+package com.diario.service;
+
+import com.diario.dto.EntradaDiarioResponseDTO;
+import com.diario.dto.ExclusaoDTO;
+import com.diario.dto.SincronizacaoDTO;
+import com.diario.model.EntradaDiario;
+import com.diario.model.MidiaEntrada;
+import com.diario.model.VersaoDiario;
+import com.diario.repository.EntradaDiarioRepository;
+import com.diario.repository.ExclusaoDiarioRepository;
+import com.diario.repository.MidiaEntradaRepository;
+import com.diario.repository.VersaoDiarioRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Sincronização incremental pros clientes que guardam o diário offline: "o que mudou desde o meu cursor".
+ *
+ * O cursor é a versão do diário do usuário ({@link VersaoDiarioService}). Cada entrada guarda a versão da
+ * última gravação dela ou das mídias dela (alterada_na_versao, com índice por usuário), e cada exclusão
+ * fica em exclusao_diario com a versão em que aconteceu. Como as gravações de um usuário ficam em fila
+ * na linha da versão, uma versão só fica visível depois de todas as anteriores, e nada é pulado.
+ * O tamanho da resposta acompanha o que mudou, não o tamanho do diário.
+ *
+ * As exclusões são guardadas por um tempo (sincronizacao.exclusoes.retencao-dias); um cliente que ficou
+ * parado mais que isso recebe cursor expirado e baixa tudo de novo.
+ */
+@Service
+public class SincronizacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SincronizacaoService.class);
+
+    @Autowired
+    private EntradaDiarioRepository entradaDiarioRepository;
+
+    @Autowired
+    private MidiaEntradaRepository midiaEntradaRepository;
+
+    @Autowired
+    private ExclusaoDiarioRepository exclusaoDiarioRepository;
+
+    @Autowired
+    private VersaoDiarioRepository versaoDiarioRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${sincronizacao.pagina.tamanho-padrao:100}")
+    private int tamanhoPaginaPadrao;
+
+    @Value("${sincronizacao.pagina.tamanho-maximo:500}")
+    private int tamanhoPaginaMaximo;
+
+    @Value("${sincronizacao.exclusoes.retencao-dias:90}")
+    private long retencaoExclusoesDias;
+
+    /**
+     * Entradas gravadas e exclusões depois do cursor. Sem cursor vem o diário inteiro (primeira sincronização),
+     * em páginas: enquanto temMais vier verdadeiro, o cliente chama de novo com o proximoCursor.
+     *
+     * Tudo é lido numa transação só (mesmo snapshot), então a página e o cursor batem entre si.
+     *
+     * @param usuarioId O dono do diário.
+     * @param cursor    O proximoCursor da última resposta, ou nulo pra começar do zero.
+     * @param limite    Quantas entradas no máximo (nulo usa o padrão; limitado ao máximo configurado).
+     * @return As alterações, o próximo cursor e se ainda tem mais.
+     * @throws IllegalArgumentException se o cursor for inválido.
+     * @throws IllegalStateException se o cursor for mais velho que as exclusões guardadas (tem que recomeçar sem cursor).
+     */
+    @Transactional(readOnly = true)
+    public SincronizacaoDTO alteracoesDesde(Long usuarioId, String cursor, Integer limite) {
+        int tamanho = limite == null ? tamanhoPaginaPadrao : Math.max(1, Math.min(limite, tamanhoPaginaMaximo));
+        boolean inicio = cursor == null || cursor.isBlank();
+        CursorSincronizacao posicao = inicio ? CursorSincronizacao.INICIO : CursorSincronizacao.decodificar(cursor);
+
+        Optional<VersaoDiario> versao = versaoDiarioRepository.findById(usuarioId);
+        long versaoAtual = versao.map(VersaoDiario::getVersao).orElse(0L);
+        Long descartadasAte = versao.map(VersaoDiario::getExclusoesDescartadasAte).orElse(null);
+        if (!inicio && descartadasAte != null && posicao.getVersao() < descartadasAte) {
+            throw new IllegalStateException("Cursor expirado: sincronize de novo sem cursor");
+        }
+
+        List<EntradaDiario> entradas = entradaDiarioRepository.findAlteradasApos(
+                usuarioId, posicao.getVersao(), posicao.getId(), PageRequest.of(0, tamanho + 1));
+        boolean temMais = entradas.size() > tamanho;
+        CursorSincronizacao proximo;
+        if (temMais) {
+            // A página acaba no meio das alterações: a próxima continua dessa entrada, até na mesma versão
+            entradas = entradas.subList(0, tamanho);
+            EntradaDiario ultima = entradas.get(tamanho - 1);
+            proximo = new CursorSincronizacao(ultima.getAlteradaNaVersao(), ultima.getId());
+        } else {
+            proximo = new CursorSincronizacao(versaoAtual, Long.MAX_VALUE);
+        }
+
+        // Exclusões das versões que essa página cobre; na primeira sincronização o cliente não tem nada pra apagar
+        List<ExclusaoDTO> excluidas = inicio ? List.of()
+                : exclusaoDiarioRepository.findEntreVersoes(usuarioId, posicao.getVersao(), proximo.getVersao()).stream()
+                        .map(ExclusaoDTO::new)
+                        .toList();
+
+        Map<Long, List<MidiaEntrada>> midiasPorEntrada = buscarMidiasPorEntrada(entradas);
+        List<EntradaDiarioResponseDTO> alteradas = entradas.stream()
+                .map(entrada -> new EntradaDiarioResponseDTO(entrada, midiasPorEntrada.getOrDefault(entrada.getId(), List.of())))
+                .toList();
+        return new SincronizacaoDTO(alteradas, excluidas, proximo.codificar(), temMais);
+    }
+
+    /**
+     * Descarta as exclusões mais velhas que a retenção, anotando até que versão cada usuário perdeu as dele.
+     */
+    @Scheduled(initialDelayString = "${sincronizacao.exclusoes.atraso-inicial-ms:900000}",
+            fixedDelayString = "${sincronizacao.exclusoes.varredura-ms:86400000}")
+    public void descartarExclusoesAntigas() {
+        LocalDateTime limite = LocalDateTime.now().minusDays(retencaoExclusoesDias);
+        Integer descartadas = transactionTemplate.execute(status -> {
+            versaoDiarioRepository.marcarExclusoesDescartadas(limite);
+            return exclusaoDiarioRepository.descartarAntesDe(limite);
+        });
+        if (descartadas != null && descartadas > 0) {
+            logger.info("{} exclusões de antes de {} descartadas da sincronização", descartadas, limite);
+        }
+    }
+
+    private Map<Long, List<MidiaEntrada>> buscarMidiasPorEntrada(List<EntradaDiario> entradas) {
+        if (entradas.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<MidiaEntrada>> midiasPorEntrada = new HashMap<>();
+        for (MidiaEntrada midia : midiaEntradaRepository.findByEntradaDiarioIdIn(entradas.stream().map(EntradaDiario::getId).toList())) {
+            midiasPorEntrada.computeIfAbsent(midia.getEntradaDiario().getId(), id -> new ArrayList<>()).add(midia);
+        }
+        return midiasPorEntrada;
+    }
+
+    /**
+     * Posição (versão, id da entrada) até onde o cliente já sincronizou, passada como texto opaco em Base64.
+     */
+    @Getter
+    @AllArgsConstructor
+    static class CursorSincronizacao {
+        // Antes de tudo: versão -1 pega também as entradas de antes da sincronização existir (versão 0)
+        static final CursorSincronizacao INICIO = new CursorSincronizacao(-1, 0L);
+
+        private final long versao;
+        private final Long id;
+
+        String codificar() {
+            String texto = versao + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static CursorSincronizacao decodificar(String cursor) {
+            try {
+                String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separador = texto.indexOf('|');
+                return new CursorSincronizacao(Long.parseLong(texto.substring(0, separador)), Long.parseLong(texto.substring(separador + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.diario.service;
+
+import com.diario.model.MidiaEntrada;
+import com.diario.model.SessaoUpload;
+import com.diario.repository.SessaoUploadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Upload retomável em pedaços: o cliente cria uma sessão, manda faixas de bytes em sequência,
+ * pergunta o offset depois de cair a conexão e no fim transforma o arquivo numa MidiaEntrada.
+ *
+ * Cada pedaço é escrito direto no arquivo parcial (sem multipart, sem cópia temporária do Tomcat)
+ * e o SHA-256 é atualizado enquanto os bytes passam. O estado do digest fica em memória; se a aplicação
+ * reiniciar no meio, ele é refeito lendo o que já foi gravado, uma vez só.
+ */
+@Service
+public class UploadRetomavelService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadRetomavelService.class);
+
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    @Autowired
+    private SessaoUploadRepository sessaoUploadRepository;
+
+    @Autowired
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Autowired
+    private EntradaDiarioService entradaDiarioService;
+
+    @Value("${upload.retomavel.tamanho-maximo:1073741824}")
+    private long tamanhoMaximo;
+
+    @Value("${upload.retomavel.validade-horas:24}")
+    private long validadeHoras;
+
+    // Trava e digest de cada sessão ativa, pra dois PUTs da mesma sessão não escreverem ao mesmo tempo
+    private final Map<String, EstadoSessao> estados = new ConcurrentHashMap<>();
+
+    /**
+     * Cria uma sessão de upload.
+     *
+     * @param usuarioId    O dono da sessão.
+     * @param nomeArquivo  O nome do arquivo no cliente.
+     * @param tamanho      O tamanho total em bytes.
+     * @param contentType  O Content-Type do arquivo (pode ser nulo).
+     * @return A sessão criada, com offset zero.
+     * @throws IllegalArgumentException se o tamanho for inválido ou passar do máximo.
+     */
+    public SessaoUpload criarSessao(Long usuarioId, String nomeArquivo, Long tamanho, String contentType) {
+        if (tamanho == null || tamanho <= 0 || tamanho > tamanhoMaximo) {
+            throw new IllegalArgumentException("Tamanho inválido. O máximo é " + tamanhoMaximo + " bytes.");
+        }
+
+        SessaoUpload sessao = new SessaoUpload();
+        sessao.setId(UUID.randomUUID().toString());
+        sessao.setUsuarioId(usuarioId);
+        sessao.setNomeOriginalArquivo(nomeArquivo);
+        sessao.setContentType(contentType);
+        sessao.setTamanhoTotal(tamanho);
+        sessao.setBytesRecebidos(0L);
+        sessao.setCriadaEm(LocalDateTime.now());
+        sessao.setExpiraEm(LocalDateTime.now().plusHours(validadeHoras));
+        return sessaoUploadRepository.save(sessao);
+    }
+
+    /**
+     * Busca uma sessão do usuário que ainda não expirou.
+     *
+     * @param id        O ID da sessão.
+     * @param usuarioId O usuário autenticado.
+     * @return A sessão, ou vazio se não existe, expirou ou é de outro usuário.
+     */
+    public Optional<SessaoUpload> buscarSessao(String id, Long usuarioId) {
+        return sessaoUploadRepository.findById(id)
+                .filter(sessao -> sessao.getUsuarioId().equals(usuarioId))
+                .filter(sessao -> sessao.getExpiraEm().isAfter(LocalDateTime.now()));
+    }
+
+    /**
+     * Grava um pedaço do arquivo a partir de {@code inicio}, que tem que ser exatamente o offset atual.
+     * Se a conexão cair no meio, o que chegou fica gravado e o offset reflete isso.
+     *
+     * @param sessao  A sessão (já validada pra o usuário).
+     * @param inicio  O primeiro byte do pedaço.
+     * @param tamanho Quantos bytes o pedaço tem.
+     * @param dados   O corpo da requisição.
+     * @return A sessão com o offset atualizado.
+     * @throws IllegalArgumentException se a faixa passar do tamanho total.
+     * @throws IllegalStateException se {@code inicio} não for o offset atual (o cliente deve perguntar o offset).
+     * @throws IOException se der erro gravando o arquivo.
+     */
+    public SessaoUpload receberPedaco(SessaoUpload sessao, long inicio, long tamanho, InputStream dados) throws IOException {
+        if (tamanho < 0 || inicio + tamanho > sessao.getTamanhoTotal()) {
+            throw new IllegalArgumentException("Faixa de bytes fora do tamanho declarado do arquivo.");
+        }
+
+        EstadoSessao estado = estados.computeIfAbsent(sessao.getId(), id -> new EstadoSessao());
+        if (!estado.trava.tryLock()) {
+            throw new IllegalStateException("Outro pedaço dessa sessão está sendo recebido.");
+        }
+        try {
+            // Relê do banco dentro da trava: outra requisição pode ter avançado o offset, ou a sessão ter vencido
+            SessaoUpload atual = sessaoUploadRepository.findById(sessao.getId())
+                    .orElseThrow(() -> new IllegalStateException("Sessão de upload encerrada."));
+            long offset = atual.getBytesRecebidos();
+            if (inicio != offset) {
+                throw new IllegalStateException("Offset esperado: " + offset);
+            }
+
+            Path parcial = armazenamentoMidiaService.caminhoParcial(atual.getId());
+            MessageDigest digest = digestAte(estado, parcial, offset);
+
+            long gravados = 0;
+            try (FileChannel canal = FileChannel.open(parcial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                canal.truncate(offset); // Descarta sobra de uma escrita anterior que não foi contabilizada
+                canal.position(offset);
+                byte[] buffer = new byte[TAMANHO_BUFFER];
+                while (gravados < tamanho) {
+                    int lidos;
+                    try {
+                        lidos = dados.read(buffer, 0, (int) Math.min(buffer.length, tamanho - gravados));
+                    } catch (IOException e) {
+                        // Conexão caiu no meio: o que chegou vale, o cliente retoma do novo offset
+                        logger.info("Pedaço interrompido na sessão {} depois de {} bytes: {}", atual.getId(), gravados, e.getMessage());
+                        break;
+                    }
+                    if (lidos == -1) {
+                        break;
+                    }
+
+                    ByteBuffer bloco = ByteBuffer.wrap(buffer, 0, lidos);
+                    while (bloco.hasRemaining()) {
+                        canal.write(bloco);
+                    }
+                    digest.update(buffer, 0, lidos);
+                    gravados += lidos;
+                }
+            } finally {
+                estado.bytesNoDigest = offset + gravados;
+                atual.setBytesRecebidos(offset + gravados);
+                atual.setExpiraEm(LocalDateTime.now().plusHours(validadeHoras));
+                sessaoUploadRepository.save(atual);
+            }
+            return atual;
+        } finally {
+            estado.trava.unlock();
+        }
+    }
+
+    /**
+     * Fecha o upload completo: o arquivo parcial vira o arquivo definitivo por rename
+     * e é anexado à entrada como uma nova mídia.
+     *
+     * O rename acontece dentro da transação da anexação; se ela desfizer depois disso, o parcial já saiu
+     * da pasta temporária. Nesse caso a sessão volta pro offset zero e o cliente reenvia o arquivo.
+     *
+     * @param sessao    A sessão (já validada pra o usuário).
+     * @param entradaId A entrada que recebe a mídia.
+     * @param usuarioId O usuário autenticado (tem que ser o dono da entrada).
+     * @return A mídia criada, ou vazio se a entrada não existe.
+     * @throws IllegalStateException se ainda faltam bytes, ou se o arquivo parcial se perdeu (offset volta pra zero).
+     * @throws AccessDeniedException se a entrada é de outro usuário.
+     * @throws IOException se der erro lendo o arquivo parcial.
+     */
+    public Optional<MidiaEntrada> finalizar(SessaoUpload sessao, Long entradaId, Long usuarioId) throws IOException {
+        // Antes de ler ou mover qualquer coisa: entrada errada não pode custar o hash nem o parcial
+        Optional<Long> dono = entradaDiarioService.donoDaEntrada(entradaId);
+        if (dono.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!dono.get().equals(usuarioId)) {
+            throw new AccessDeniedException("Entrada " + entradaId + " não pertence ao usuário " + usuarioId);
+        }
+
+        EstadoSessao estado = estados.computeIfAbsent(sessao.getId(), id -> new EstadoSessao());
+        if (!estado.trava.tryLock()) {
+            throw new IllegalStateException("Ainda tem pedaço dessa sessão sendo recebido.");
+        }
+        try {
+            SessaoUpload atual = sessaoUploadRepository.findById(sessao.getId())
+                    .orElseThrow(() -> new IllegalStateException("Sessão de upload encerrada."));
+            if (!atual.getBytesRecebidos().equals(atual.getTamanhoTotal())) {
+                throw new IllegalStateException("Upload incompleto. Offset esperado: " + atual.getBytesRecebidos());
+            }
+
+            Path parcial = armazenamentoMidiaService.caminhoParcial(atual.getId());
+            if (recomecarSeParcialPerdido(atual, estado, parcial)) {
+                throw new IllegalStateException("O arquivo do upload se perdeu. Offset esperado: 0");
+            }
+            // Resumo numa cópia: o digest em memória continua valendo se a anexação falhar e o cliente tentar de novo
+            String hash = HexFormat.of().formatHex(copia(digestAte(estado, parcial, atual.getTamanhoTotal())).digest());
+
+            ArmazenamentoMidiaService.ArquivoTemporario temporario = armazenamentoMidiaService.temporarioExistente(
+                    parcial, hash, atual.getTamanhoTotal(), atual.getNomeOriginalArquivo(), atual.getContentType());
+            MidiaEntrada midia;
+            try {
+                midia = entradaDiarioService.anexarArquivoTemporario(entradaId, usuarioId, temporario);
+            } catch (RuntimeException e) {
+                // Desfeita depois do rename: a próxima tentativa já recebe o offset zero
+                recomecarSeParcialPerdido(atual, estado, parcial);
+                throw e;
+            }
+
+            sessaoUploadRepository.delete(atual);
+            estados.remove(atual.getId());
+            return Optional.of(midia);
+        } finally {
+            estado.trava.unlock();
+        }
+    }
+
+    // Sessão completa sem o arquivo parcial: volta pro offset zero, pra o cliente reenviar em vez de falhar pra sempre
+    private boolean recomecarSeParcialPerdido(SessaoUpload sessao, EstadoSessao estado, Path parcial) {
+        if (Files.exists(parcial)) {
+            return false;
+        }
+        logger.warn("Arquivo parcial da sessão {} sumiu depois de uma finalização desfeita, upload recomeça do zero", sessao.getId());
+        estado.digest = null;
+        estado.bytesNoDigest = -1;
+        sessao.setBytesRecebidos(0L);
+        sessao.setExpiraEm(LocalDateTime.now().plusHours(validadeHoras));
+        sessaoUploadRepository.save(sessao);
+        return true;
+    }
+
+    /**
+     * Apaga as sessões vencidas e os arquivos parciais delas.
+     */
+    @Scheduled(fixedDelayString = "${upload.retomavel.varredura-ms:900000}")
+    public void removerSessoesExpiradas() {
+        for (SessaoUpload vencida : sessaoUploadRepository.findByExpiraEmBefore(LocalDateTime.now())) {
+            // A mesma trava dos PUTs: enquanto ela está com a varredura, nenhum pedaço entra nessa sessão
+            EstadoSessao estado = estados.computeIfAbsent(vencida.getId(), id -> new EstadoSessao());
+            if (!estado.trava.tryLock()) {
+                continue; // Recebendo bytes agora, fica pra próxima
+            }
+            try {
+                // Um PUT que terminou entre a consulta e a trava renovou a validade
+                Optional<SessaoUpload> atual = sessaoUploadRepository.findById(vencida.getId());
+                if (atual.isPresent() && atual.get().getExpiraEm().isAfter(LocalDateTime.now())) {
+                    continue;
+                }
+                Files.deleteIfExists(armazenamentoMidiaService.caminhoParcial(vencida.getId()));
+                atual.ifPresent(sessaoUploadRepository::delete);
+                estados.remove(vencida.getId());
+            } catch (IOException e) {
+                logger.warn("Não foi possível apagar o upload parcial da sessão {}: {}", vencida.getId(), e.getMessage());
+            } finally {
+                estado.trava.unlock();
+            }
+        }
+    }
+
+    /**
+     * Digest com exatamente os primeiros {@code bytes} do arquivo parcial. Normalmente já está em memória;
+     * depois de um restart é refeito lendo o arquivo.
+     */
+    private MessageDigest digestAte(EstadoSessao estado, Path parcial, long bytes) throws IOException {
+        if (estado.digest != null && estado.bytesNoDigest == bytes) {
+            return estado.digest;
+        }
+
+        MessageDigest digest = ArmazenamentoMidiaService.novoDigest();
+        if (bytes > 0) {
+            try (InputStream in = Files.newInputStream(parcial)) {
+                byte[] buffer = new byte[TAMANHO_BUFFER];
+                long restante = bytes;
+                int lidos;
+                while (restante > 0 && (lidos = in.read(buffer, 0, (int) Math.min(buffer.length, restante))) != -1) {
+                    digest.update(buffer, 0, lidos);
+                    restante -= lidos;
+                }
+            }
+        }
+        estado.digest = digest;
+        estado.bytesNoDigest = bytes;
+        return digest;
+    }
+
+    private static MessageDigest copia(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 sem suporte a clone", e);
+        }
+    }
+
+    private static class EstadoSessao {
+        private final ReentrantLock trava = new ReentrantLock();
+        private MessageDigest digest;
+        private long bytesNoDigest = -1;
+    }
+}
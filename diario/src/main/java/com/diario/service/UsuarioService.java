@@ -2,26 +2,62 @@ package com.diario.service;
 
 import com.diario.model.Usuario;
 import com.diario.repository.UsuarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class UsuarioService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UsuarioService.class);
+
     @Autowired
     private UsuarioRepository usuarioRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private HashSenhaService hashSenhaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     public Usuario cadastrarUsuario(Usuario usuario) {
-        usuario.setSenha(passwordEncoder.encode(usuario.getSenha()));
+        usuario.setSenha(hashSenhaService.codificar(usuario.getSenha()));
         return usuarioRepository.save(usuario);
     }
 
+    /**
+     * Confere a senha de login e, se o hash gravado é de um custo menor que o atual, grava um novo na hora.
+     * Os hashes rodam fora de transação, pra não segurar conexão do banco enquanto esperam o executor.
+     * Refazer o hash é só aproveitar a senha em mãos: se os hashes estão sobrecarregados ou a gravação falha,
+     * fica pro próximo login, e quem acertou a senha entra do mesmo jeito.
+     *
+     * @param usuario O usuário carregado pelo username.
+     * @param senha   A senha informada no login.
+     * @return true se a senha confere.
+     * @throws java.util.concurrent.RejectedExecutionException se os hashes estão sobrecarregados (responder 503).
+     */
+    public boolean conferirSenha(Usuario usuario, String senha) {
+        String hash = usuario.getSenha();
+        if (!hashSenhaService.confere(senha, hash)) {
+            return false;
+        }
+        if (hashSenhaService.precisaRefazer(hash)) {
+            try {
+                String novo = hashSenhaService.codificar(senha);
+                transactionTemplate.executeWithoutResult(status -> usuarioRepository.trocarHashSenha(usuario.getId(), hash, novo));
+            } catch (RejectedExecutionException | DataAccessException e) {
+                logger.warn("Hash da senha do usuário {} não foi refeito, fica pro próximo login: {}", usuario.getId(), e.getMessage());
+            }
+        }
+        return true;
+    }
+
     public Optional<Usuario> buscarPorUsername(String username) {
         return usuarioRepository.findByUsername(username);
     }
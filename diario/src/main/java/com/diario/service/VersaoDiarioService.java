@@ -0,0 +1,83 @@
+package com.diario.service;
+
+import com.diario.repository.EntradaDiarioRepository;
+import com.diario.repository.VersaoDiarioRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Versão do diário de cada usuário, pra revalidação (ETag) das leituras.
+ *
+ * Toda gravação de entrada ou mídia soma um na versão do dono, na mesma transação da gravação.
+ * As leituras pegam a versão antes de carregar qualquer coisa: se o cliente já tem essa versão,
+ * a resposta é 304 depois de uma leitura pela chave primária, sem entidades nem JSON.
+ *
+ * A linha do usuário fica travada do incremento até o commit, então as gravações de um mesmo usuário
+ * entram em fila e as versões ficam visíveis na ordem: é isso que deixa a sincronização usar a versão como cursor.
+ */
+@Service
+public class VersaoDiarioService {
+
+    @Autowired
+    private VersaoDiarioRepository versaoDiarioRepository;
+
+    @Autowired
+    private EntradaDiarioRepository entradaDiarioRepository;
+
+    /**
+     * Soma um na versão do usuário. Tem que rodar dentro da transação que grava,
+     * pra versão e dados ficarem visíveis juntos no commit.
+     *
+     * @param usuarioId O dono do que foi gravado.
+     * @return A nova versão, pra marcar no que foi gravado.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long incrementar(Long usuarioId) {
+        versaoDiarioRepository.incrementar(usuarioId);
+        return versaoDiarioRepository.findVersao(usuarioId).orElseThrow();
+    }
+
+    /**
+     * Soma um na versão de cada dono dessas mídias e marca as entradas delas com a nova versão
+     * (rotinas que regravam mídias em lote).
+     *
+     * @param midiaIds Os IDs das mídias alteradas.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void incrementarDonosDasMidias(Collection<Long> midiaIds) {
+        if (!midiaIds.isEmpty()) {
+            versaoDiarioRepository.incrementarDonosDasMidias(midiaIds);
+            entradaDiarioRepository.marcarAlteradasPorMidias(midiaIds);
+        }
+    }
+
+    /**
+     * Versão atual do diário de um usuário.
+     *
+     * @param usuarioId O usuário.
+     * @return A versão (0 se ele nunca gravou nada).
+     */
+    @Transactional(readOnly = true)
+    public long versao(Long usuarioId) {
+        return versaoDiarioRepository.findVersao(usuarioId).orElse(0L);
+    }
+
+    /**
+     * Versão do diário do dono de uma entrada, se ela for do usuário.
+     *
+     * @param entradaId O ID da entrada.
+     * @param usuarioId O usuário autenticado.
+     * @return A versão, ou vazio se a entrada não existe ou é de outro usuário.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> versaoDaEntrada(Long entradaId, Long usuarioId) {
+        return versaoDiarioRepository.findVersaoDoDono(entradaId, usuarioId).stream()
+                .findFirst()
+                .map(Number::longValue);
+    }
+}
@@ -0,0 +1,67 @@
+package com.diario.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de tamanho fixo pra textos: diz com certeza que um texto não foi adicionado,
+ * ou que talvez foi (com a taxa de falso positivo escolhida na criação). Pode ser lido e
+ * alimentado por várias threads ao mesmo tempo.
+ */
+public class FiltroBloom {
+
+    private final AtomicLongArray bits;
+    private final int quantidadeBits;
+    private final int quantidadeHashes;
+
+    /**
+     * @param elementosEsperados Quantos textos devem entrar (passando disso a taxa de falso positivo sobe).
+     * @param falsoPositivo      Taxa de falso positivo desejada (ex: 0.01).
+     */
+    public FiltroBloom(int elementosEsperados, double falsoPositivo) {
+        int n = Math.max(1, elementosEsperados);
+        long m = (long) Math.ceil(-n * Math.log(falsoPositivo) / (Math.log(2) * Math.log(2)));
+        quantidadeBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        quantidadeHashes = Math.max(1, (int) Math.round((double) quantidadeBits / n * Math.log(2)));
+        bits = new AtomicLongArray((quantidadeBits + 63) / 64);
+    }
+
+    public void adicionar(String texto) {
+        long hash = hash64(texto);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < quantidadeHashes; i++) {
+            int bit = posicao(h1 + i * h2);
+            long mascara = 1L << bit;
+            bits.getAndUpdate(bit >>> 6, palavra -> palavra | mascara);
+        }
+    }
+
+    public boolean talvezContem(String texto) {
+        long hash = hash64(texto);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < quantidadeHashes; i++) {
+            int bit = posicao(h1 + i * h2);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int posicao(int combinado) {
+        return (combinado & Integer.MAX_VALUE) % quantidadeBits;
+    }
+
+    // FNV-1a de 64 bits com a mistura final do SplitMix64, pra espalhar bem as duas metades
+    private static long hash64(String texto) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < texto.length(); i++) {
+            hash ^= texto.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -1,13 +1,29 @@
 package com.diario.util;
 
+import com.diario.model.UsuarioDetails;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.function.Function;
 
@@ -15,27 +31,109 @@ import java.util.function.Function;
 public class JwtUtil {
 
     private static final String SECRET = "segredo_super_secreto_12345678901234567890123456789012"; // 64+ bits
-    private static final long EXPIRATION_TIME = 1000 * 60 * 60; // 1 hora
+    private static final String CLAIM_USUARIO_ID = "uid"; // ID do usuário, pra autenticar sem ir no banco
+    private static final String CLAIM_SESSAO_ID = "sid"; // Sessão de login, pra revogação
+    private static final String NOME_CACHE = "tokens-verificados";
 
     private final Key key = Keys.hmacShaKeyFor(SECRET.getBytes());
 
+    // O parser do jjwt é imutável e thread-safe: monta uma vez só, não a cada token
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Curto de propósito: o cliente renova com o refresh token (POST /auth/refresh) sem passar pelo BCrypt
+    @Value("${auth.jwt.acesso-minutos:15}")
+    private long acessoMinutos;
+
+    @Value("${auth.jwt.cache.tamanho-maximo:50000}")
+    private long tamanhoMaximoCache;
+
+    // Tokens já conferidos, pelo SHA-256 (o token em si não fica guardado); cada um sai do cache quando expira
+    private Cache<String, TokenVerificado> verificados;
+
+    @PostConstruct
+    void iniciarCache() {
+        verificados = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximoCache)
+                .expireAfter(new Expiry<String, TokenVerificado>() {
+                    @Override
+                    public long expireAfterCreate(String chave, TokenVerificado token, long agora) {
+                        return Math.max(0, Duration.between(Instant.now(), token.getExpiracao()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String chave, TokenVerificado token, long agora, long restante) {
+                        return restante;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String chave, TokenVerificado token, long agora, long restante) {
+                        return restante;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verificados, NOME_CACHE);
+    }
+
     public String generateToken(UserDetails userDetails) {
+        return generateToken(userDetails, null);
+    }
+
+    /**
+     * Token de acesso de uma sessão de login: revogar a sessão derruba o token antes dele expirar.
+     *
+     * @param userDetails O usuário.
+     * @param sessaoId    O ID da sessão de login (pode ser nulo).
+     * @return O token assinado.
+     */
+    public String generateToken(UserDetails userDetails, String sessaoId) {
         String username = userDetails.getUsername(); // pega o nome de usuário
 
         return Jwts.builder()
                 .setSubject(username) // armazena o username no subject
+                .claim(CLAIM_USUARIO_ID, userDetails instanceof UsuarioDetails detalhes ? detalhes.getId() : null)
+                .claim(CLAIM_SESSAO_ID, sessaoId)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .setExpiration(new Date(System.currentTimeMillis() + acessoMinutos * 60 * 1000))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Confere o token uma vez só (assinatura e validade) e devolve o que ele traz. Um token que já foi conferido
+     * e ainda não expirou sai do cache por um hash, sem decodificar nem recalcular o HMAC.
+     *
+     * @param token O token JWT.
+     * @return Username, ID do usuário e expiração do token.
+     * @throws io.jsonwebtoken.JwtException se o token for inválido, adulterado ou estiver expirado.
+     */
+    public TokenVerificado verificar(String token) {
+        return verificados.get(resumo(token), chave -> {
+            Claims claims = extractAllClaims(token);
+            return new TokenVerificado(claims.getSubject(), claims.get(CLAIM_USUARIO_ID, Long.class),
+                    claims.get(CLAIM_SESSAO_ID, String.class), claims.getExpiration().toInstant());
+        });
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verificar(token).getUsername();
+    }
+
+    /**
+     * ID do usuário assinado no token.
+     *
+     * @param token O token JWT.
+     * @return O ID, ou nulo se o token é de antes do ID ir no token.
+     */
+    public Long extractUsuarioId(String token) {
+        return verificar(token).getUsuarioId();
     }
 
     public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        return Date.from(verificar(token).getExpiracao());
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -44,20 +142,20 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String usernameFromToken = extractUsername(token);
-        return (usernameFromToken.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        TokenVerificado verificado = verificar(token);
+        return verificado.getUsername().equals(userDetails.getUsername()) && verificado.getExpiracao().isAfter(Instant.now());
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private static String resumo(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e); // toda JVM tem
+        }
     }
 }
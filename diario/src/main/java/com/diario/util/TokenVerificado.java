@@ -0,0 +1,24 @@
+package com.diario.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * O que interessa de um token JWT que já teve assinatura e validade conferidas.
+ */
+@Getter
+@AllArgsConstructor
+public class TokenVerificado {
+
+    private final String username;
+
+    // Nulo nos tokens de antes do ID do usuário ir no token
+    private final Long usuarioId;
+
+    // Sessão de login que emitiu o token (pra revogação); nulo nos tokens de antes das sessões
+    private final String sessaoId;
+
+    private final Instant expiracao;
+}
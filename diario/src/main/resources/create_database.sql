@@ -89,4 +89,234 @@ CREATE TABLE IF NOT EXISTS `diario`.`midia_entrada` (
 -----------------------------------------------------
 -- Implementando título nas entradas:
 -----------------------------------------------------
-ALTER TABLE entrada_diario add column `titulo` VARCHAR(255) NULL DEFAULT NULL; commit;
\ No newline at end of file
+ALTER TABLE entrada_diario add column `titulo` VARCHAR(255) NULL DEFAULT NULL; commit;
+
+-----------------------------------------------------
+-- Arquivos deduplicados pelo SHA-256 do conteúdo:
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`arquivo_midia` (
+    `hash_conteudo` VARCHAR(64) NOT NULL, -- SHA-256 em hexa
+    `nome_arquivo` VARCHAR(255) NOT NULL, -- <hash>.<extensão> na pasta de upload
+    `tamanho_bytes` BIGINT NOT NULL,
+    `referencias` INT NOT NULL, -- Quantas linhas de midia_entrada usam esse arquivo
+    `data_criacao` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`hash_conteudo`),
+    UNIQUE INDEX `uk_arquivo_midia_nome` (`nome_arquivo` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+
+ALTER TABLE midia_entrada add column `hash_conteudo` VARCHAR(64) NULL DEFAULT NULL; commit; -- Nulo nas mídias antigas
+
+-----------------------------------------------------
+-- Variantes (miniaturas e prévias) geradas das mídias:
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`variante_midia` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT,
+    `hash_conteudo` VARCHAR(64) NOT NULL, -- Conteúdo de origem, em arquivo_midia
+    `variante` VARCHAR(20) NOT NULL, -- Ex: 'miniatura', 'media'
+    `nome_arquivo` VARCHAR(255) NOT NULL, -- <hash>_<variante>.jpg na pasta de upload
+    `largura` INT NOT NULL,
+    `altura` INT NOT NULL,
+    `tamanho_bytes` BIGINT NOT NULL,
+    `data_criacao` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE INDEX `uk_variante_midia_hash_variante` (`hash_conteudo` ASC, `variante` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+
+-----------------------------------------------------
+-- Sessões de upload retomável (em pedaços):
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`sessao_upload` (
+    `id` VARCHAR(36) NOT NULL, -- UUID, também nomeia o arquivo parcial
+    `usuario_id` BIGINT NOT NULL,
+    `nome_original_arquivo` VARCHAR(255) NULL DEFAULT NULL,
+    `content_type` VARCHAR(255) NULL DEFAULT NULL,
+    `tamanho_total` BIGINT NOT NULL,
+    `bytes_recebidos` BIGINT NOT NULL,
+    `criada_em` DATETIME NOT NULL,
+    `expira_em` DATETIME NOT NULL,
+    PRIMARY KEY (`id`),
+    INDEX `idx_sessao_upload_expira_em` (`expira_em` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+
+-----------------------------------------------------
+-- Fila de arquivos físicos a apagar depois do commit (outbox):
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`remocao_arquivo_pendente` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT,
+    `nome_arquivo` VARCHAR(255) NULL DEFAULT NULL, -- Nome no armazenamento (original ou variante)
+    `caminho_arquivo` VARCHAR(255) NULL DEFAULT NULL, -- Caminho completo de uma mídia antiga, de antes do hash
+    `tentativas` INT NOT NULL,
+    `criada_em` DATETIME NOT NULL,
+    `proxima_tentativa` DATETIME NOT NULL,
+    PRIMARY KEY (`id`),
+    INDEX `idx_remocao_arquivo_proxima_tentativa` (`proxima_tentativa` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+
+CREATE INDEX `idx_midia_entrada_caminho_arquivo` ON midia_entrada (`caminho_arquivo`); commit; -- Conferência de órfãos por caminho
+CREATE INDEX `idx_variante_midia_nome_arquivo` ON variante_midia (`nome_arquivo`); commit; -- Conferência de órfãos por nome
+
+-----------------------------------------------------
+-- Metadados das mídias, lidos uma vez no upload:
+-----------------------------------------------------
+ALTER TABLE midia_entrada
+    ADD COLUMN `content_type` VARCHAR(100) NULL DEFAULT NULL, -- Nulo até o preenchimento passar nas mídias antigas
+    ADD COLUMN `tamanho_bytes` BIGINT NULL DEFAULT NULL,
+    ADD COLUMN `largura` INT NULL DEFAULT NULL, -- Só imagens
+    ADD COLUMN `altura` INT NULL DEFAULT NULL, -- Só imagens
+    ADD COLUMN `duracao_ms` BIGINT NULL DEFAULT NULL; commit; -- Só áudio/vídeo
+
+-----------------------------------------------------
+-- Listagem paginada por cursor (data, id) das entradas de cada usuário:
+-----------------------------------------------------
+CREATE INDEX `idx_entrada_diario_usuario_data_id` ON entrada_diario (`usuario_id`, `data`, `id`); commit;
+
+-----------------------------------------------------
+-- Resumo das entradas, gravado na escrita, pra listagem resumida não ler o conteúdo:
+-----------------------------------------------------
+ALTER TABLE entrada_diario ADD COLUMN `resumo` VARCHAR(255) NULL DEFAULT NULL; commit;
+-- Entradas antigas: mesmo corte que a aplicação faz (espaços juntados, 200 caracteres e reticências)
+UPDATE entrada_diario
+SET resumo = CASE
+    WHEN CHAR_LENGTH(REGEXP_REPLACE(TRIM(conteudo), '[[:space:]]+', ' ')) <= 200
+        THEN REGEXP_REPLACE(TRIM(conteudo), '[[:space:]]+', ' ')
+    ELSE CONCAT(TRIM(TRAILING ' ' FROM LEFT(REGEXP_REPLACE(TRIM(conteudo), '[[:space:]]+', ' '), 200)), '…')
+END
+WHERE resumo IS NULL AND conteudo IS NOT NULL; commit;
+
+-----------------------------------------------------
+-- Contagem de entradas e mídias por usuário e dia, pro calendário:
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`contagem_diaria` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT,
+    `usuario_id` BIGINT NOT NULL,
+    `dia` DATE NOT NULL,
+    `entradas` INT NOT NULL,
+    `midias` INT NOT NULL,
+    PRIMARY KEY (`id`),
+    UNIQUE INDEX `uk_contagem_diaria_usuario_dia` (`usuario_id` ASC, `dia` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+-- As entradas que já existiam, contadas aqui antes de subir a versão que lê e mantém a tabela
+-- (a aplicação só soma e subtrai a partir delas)
+INSERT INTO `diario`.`contagem_diaria` (usuario_id, dia, entradas, midias)
+SELECT e.usuario_id, e.data, COUNT(*), COALESCE(SUM(m.quantidade), 0)
+FROM `diario`.`entrada_diario` e
+LEFT JOIN (SELECT id_entrada_diario, COUNT(*) AS quantidade FROM `diario`.`midia_entrada` GROUP BY id_entrada_diario) m
+    ON m.id_entrada_diario = e.id
+WHERE e.data IS NOT NULL
+GROUP BY e.usuario_id, e.data; commit;
+
+-----------------------------------------------------
+-- IDs de entradas e mídias em blocos (lotes JDBC), no lugar do AUTO_INCREMENT:
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`gerador_id` (
+    `tabela` VARCHAR(255) NOT NULL,
+    `proximo_id` BIGINT NULL DEFAULT NULL,
+    PRIMARY KEY (`tabela`)
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+-- A aplicação acerta os valores acima do maior ID de cada tabela a cada subida (GeradorIdConfig)
+
+CREATE INDEX `idx_midia_entrada_hash_conteudo` ON midia_entrada (`hash_conteudo`); commit; -- Mídias do usuário por arquivo (importação)
+
+-----------------------------------------------------
+-- Versão do diário de cada usuário (ETag das listagens e das entradas):
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`versao_diario` (
+    `usuario_id` BIGINT NOT NULL,
+    `versao` BIGINT NOT NULL,
+    PRIMARY KEY (`usuario_id`)
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+-- Usuários sem linha valem versão 0; a linha nasce na primeira gravação
+
+-----------------------------------------------------
+-- Sincronização incremental: versão da última gravação de cada entrada e registro das exclusões
+-----------------------------------------------------
+ALTER TABLE `diario`.`entrada_diario` ADD COLUMN `alterada_na_versao` BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX `idx_entrada_diario_usuario_versao_id` ON `diario`.`entrada_diario` (`usuario_id`, `alterada_na_versao`, `id`);
+ALTER TABLE `diario`.`versao_diario` ADD COLUMN `exclusoes_descartadas_ate` BIGINT NULL DEFAULT NULL;
+
+CREATE TABLE IF NOT EXISTS `diario`.`exclusao_diario` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT,
+    `usuario_id` BIGINT NOT NULL,
+    `versao` BIGINT NOT NULL,
+    `entrada_id` BIGINT NOT NULL,
+    `midia_id` BIGINT NULL DEFAULT NULL,
+    `criada_em` DATETIME(6) NOT NULL,
+    PRIMARY KEY (`id`),
+    INDEX `idx_exclusao_diario_usuario_versao` (`usuario_id` ASC, `versao` ASC) VISIBLE,
+    INDEX `idx_exclusao_diario_criada_em` (`criada_em` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+-- Entradas de antes disso ficam na versão 0 e vêm na primeira sincronização (sem cursor)
+
+-----------------------------------------------------
+-- Sessões de login e refresh tokens rotativos (só o SHA-256 do token fica gravado)
+-----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `diario`.`sessao_login` (
+    `id` VARCHAR(36) NOT NULL,
+    `usuario_id` BIGINT NOT NULL,
+    `criada_em` DATETIME(6) NOT NULL,
+    `expira_em` DATETIME(6) NOT NULL,
+    `revogada_em` DATETIME(6) NULL DEFAULT NULL,
+    PRIMARY KEY (`id`),
+    INDEX `idx_sessao_login_usuario` (`usuario_id` ASC) VISIBLE,
+    INDEX `idx_sessao_login_revogada_em` (`revogada_em` ASC) VISIBLE,
+    INDEX `idx_sessao_login_expira_em` (`expira_em` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS `diario`.`refresh_token` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT,
+    `sessao_id` VARCHAR(36) NOT NULL,
+    `hash_token` VARCHAR(64) NOT NULL,
+    `criado_em` DATETIME(6) NOT NULL,
+    `expira_em` DATETIME(6) NOT NULL,
+    `usado_em` DATETIME(6) NULL DEFAULT NULL,
+    PRIMARY KEY (`id`),
+    UNIQUE INDEX `idx_refresh_token_hash` (`hash_token` ASC) VISIBLE,
+    INDEX `idx_refresh_token_sessao` (`sessao_id` ASC) VISIBLE,
+    INDEX `idx_refresh_token_expira_em` (`expira_em` ASC) VISIBLE
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8mb4
+    COLLATE = utf8mb4_0900_ai_ci;
+-- Tokens de acesso de antes das sessões (sem sid) continuam valendo até expirar, sem revogação
+
+-----------------------------------------------------
+-- Nome público de cada mídia (a URL do arquivo), sem relação com o hash do conteúdo:
+-----------------------------------------------------
+ALTER TABLE midia_entrada ADD COLUMN `nome_publico` VARCHAR(64) NULL DEFAULT NULL; commit;
+-- Mídias antigas (sem hash) já tinham nome UUID no disco e continuam com ele; as deduplicadas ganham UUID + extensão
+UPDATE midia_entrada
+SET nome_publico = CASE
+    WHEN hash_conteudo IS NULL THEN SUBSTRING_INDEX(REPLACE(caminho_arquivo, '\\', '/'), '/', -1)
+    WHEN SUBSTRING_INDEX(REPLACE(caminho_arquivo, '\\', '/'), '/', -1) LIKE '%.%'
+        THEN CONCAT(UUID(), '.', SUBSTRING_INDEX(caminho_arquivo, '.', -1))
+    ELSE UUID()
+END
+WHERE nome_publico IS NULL; commit;
+CREATE UNIQUE INDEX `idx_midia_entrada_nome_publico` ON midia_entrada (`nome_publico`); commit;
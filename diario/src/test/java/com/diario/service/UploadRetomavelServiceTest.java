@@ -0,0 +1,134 @@
+package com.diario.service;
+
+import com.diario.model.MidiaEntrada;
+import com.diario.model.SessaoUpload;
+import com.diario.repository.SessaoUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadRetomavelServiceTest {
+
+    private static final byte[] CONTEUDO = "conteúdo do arquivo enviado em pedaços".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private SessaoUploadRepository sessaoUploadRepository;
+
+    @Mock
+    private ArmazenamentoMidiaService armazenamentoMidiaService;
+
+    @Mock
+    private EntradaDiarioService entradaDiarioService;
+
+    @InjectMocks
+    private UploadRetomavelService uploadRetomavelService;
+
+    @TempDir
+    Path pasta;
+
+    private SessaoUpload sessao;
+
+    @BeforeEach
+    void preparar() throws Exception {
+        ReflectionTestUtils.setField(uploadRetomavelService, "tamanhoMaximo", 1024L * 1024);
+        ReflectionTestUtils.setField(uploadRetomavelService, "validadeHoras", 24L);
+
+        sessao = new SessaoUpload();
+        sessao.setId("sessao-1");
+        sessao.setUsuarioId(1L);
+        sessao.setNomeOriginalArquivo("foto.jpg");
+        sessao.setTamanhoTotal((long) CONTEUDO.length);
+        sessao.setBytesRecebidos(0L);
+        sessao.setExpiraEm(LocalDateTime.now().plusHours(1));
+
+        when(sessaoUploadRepository.findById("sessao-1")).thenReturn(Optional.of(sessao));
+        when(armazenamentoMidiaService.caminhoParcial("sessao-1")).thenReturn(pasta.resolve("sessao-1"));
+    }
+
+    @Test
+    void finalizarDeNovoDepoisDeFalharUsaOHashDoConteudo() throws Exception {
+        receberTudo();
+
+        MidiaEntrada midia = new MidiaEntrada();
+        when(entradaDiarioService.donoDaEntrada(10L)).thenReturn(Optional.of(1L));
+        when(entradaDiarioService.anexarArquivoTemporario(eq(10L), eq(1L), any()))
+                .thenThrow(new RuntimeException("Falha ao gravar a mídia"))
+                .thenReturn(midia);
+
+        assertThrows(RuntimeException.class, () -> uploadRetomavelService.finalizar(sessao, 10L, 1L));
+        assertSame(midia, uploadRetomavelService.finalizar(sessao, 10L, 1L).orElseThrow());
+
+        ArgumentCaptor<String> hashes = ArgumentCaptor.forClass(String.class);
+        verify(armazenamentoMidiaService, times(2)).temporarioExistente(any(), hashes.capture(), anyLong(), anyString(), any());
+        String esperado = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTEUDO));
+        assertEquals(List.of(esperado, esperado), hashes.getAllValues());
+    }
+
+    @Test
+    void finalizarDesfeitoDepoisDoRenameVoltaProOffsetZero() throws Exception {
+        receberTudo();
+
+        Path parcial = pasta.resolve("sessao-1");
+        when(entradaDiarioService.donoDaEntrada(10L)).thenReturn(Optional.of(1L));
+        when(entradaDiarioService.anexarArquivoTemporario(eq(10L), eq(1L), any())).thenAnswer(invocacao -> {
+            Files.delete(parcial); // O rename aconteceu e a transação desfez depois
+            throw new RuntimeException("Deadlock no commit");
+        });
+
+        assertThrows(RuntimeException.class, () -> uploadRetomavelService.finalizar(sessao, 10L, 1L));
+        assertEquals(0L, sessao.getBytesRecebidos());
+
+        // O cliente retoma do zero e a finalização seguinte funciona
+        MidiaEntrada midia = new MidiaEntrada();
+        when(entradaDiarioService.anexarArquivoTemporario(eq(10L), eq(1L), any())).thenReturn(midia);
+        receberTudo();
+        assertSame(midia, uploadRetomavelService.finalizar(sessao, 10L, 1L).orElseThrow());
+    }
+
+    @Test
+    void finalizarComEntradaInexistenteNaoMexeNoParcial() throws Exception {
+        receberTudo();
+        when(entradaDiarioService.donoDaEntrada(99L)).thenReturn(Optional.empty());
+
+        assertTrue(uploadRetomavelService.finalizar(sessao, 99L, 1L).isEmpty());
+        assertTrue(Files.exists(pasta.resolve("sessao-1")));
+        verify(armazenamentoMidiaService, never()).temporarioExistente(any(), anyString(), anyLong(), anyString(), any());
+    }
+
+    private void receberTudo() throws Exception {
+        int meio = CONTEUDO.length / 2;
+        uploadRetomavelService.receberPedaco(sessao, 0, meio, new ByteArrayInputStream(CONTEUDO, 0, meio));
+        uploadRetomavelService.receberPedaco(sessao, meio, CONTEUDO.length - meio,
+                new ByteArrayInputStream(CONTEUDO, meio, CONTEUDO.length - meio));
+    }
+}